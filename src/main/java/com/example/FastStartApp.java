@@ -0,0 +1,47 @@
+package com.example;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Runs the application with the faststart profile: lazy bean initialization, and Spring's startup steps
+ * recorded and served at /actuator/startup.
+ *
+ * With socialmedia.faststart.exit-on-ready=true the app shuts down as soon as it is ready. The appcds Maven
+ * profile uses that for a training run which dumps an AppCDS archive to target/socialmedia.jsa; start later
+ * runs with -XX:SharedArchiveFile=target/socialmedia.jsa and the same class path.
+ */
+public class FastStartApp {
+
+    private static final int STARTUP_STEP_CAPACITY = 4096;
+
+    /**
+     * Runs the application with the faststart profile.
+     * @param args The arguments of the program.
+     */
+    public static void main(String[] args) {
+        SpringApplication application = new SpringApplication(SocialMediaApp.class);
+        application.setApplicationStartup(new BufferingApplicationStartup(STARTUP_STEP_CAPACITY));
+        application.setAdditionalProfiles("faststart");
+        application.addListeners(new ReadyListener());
+        application.run(args);
+    }
+
+    private static final class ReadyListener implements ApplicationListener<ApplicationReadyEvent> {
+        @Override
+        public void onApplicationEvent(ApplicationReadyEvent event) {
+            long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+            System.out.println("Ready to serve requests " + uptime + " ms after JVM start.");
+
+            ConfigurableApplicationContext context = event.getApplicationContext();
+            if (context.getEnvironment().getProperty("socialmedia.faststart.exit-on-ready", Boolean.class, false)) {
+                System.exit(SpringApplication.exit(context));
+            }
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package com.example.archive;
+
+import com.example.entity.Message;
+import com.example.repository.PostedBySummary;
+import com.example.util.MessageRecordCodec;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * An immutable, memory-mapped file of archived messages.
+ *
+ * Layout:
+ *   header   magic, version
+ *   blocks   zlib-compressed runs of up to blockMessages records, sorted by messageId
+ *   index    one entry per block: first and last messageId, offset, compressed and raw length, record count
+ *   users    for each postedBy, the blocks holding its messages, their count, and their first and last
+ *            timePostedEpoch, so account summaries need no block to be inflated
+ *   footer   index offset, users offset, magic
+ *
+ * The index and user sections are read into arrays when the segment is opened; a lookup inflates only the
+ * block that can hold the message, and a timeline only the blocks listed for its user.
+ */
+public final class MessageSegment {
+
+    private static final int MAGIC = 0x4D534731;
+    private static final int VERSION = 2;
+    private static final int FOOTER_BYTES = 20;
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final int[] firstIds;
+    private final int[] lastIds;
+    private final int[] offsets;
+    private final int[] compressedLengths;
+    private final int[] rawLengths;
+    private final int messageCount;
+    private final int[] postedBys;
+    private final int[][] blocksByPostedBy;
+    private final int[] countsByPostedBy;
+    private final long[] firstsByPostedBy;
+    private final long[] lastsByPostedBy;
+
+    private MessageSegment(Path path, MappedByteBuffer buffer) {
+        this.path = path;
+        this.buffer = buffer;
+
+        int size = buffer.limit();
+        if (size < 8 + FOOTER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(size - 4) != MAGIC) {
+            throw new IllegalStateException("Not a message segment: " + path);
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IllegalStateException("Unsupported segment version " + version + ": " + path);
+        }
+        int indexOffset = (int) buffer.getLong(size - FOOTER_BYTES);
+        int usersOffset = (int) buffer.getLong(size - FOOTER_BYTES + 8);
+
+        ByteBuffer index = buffer.duplicate().position(indexOffset);
+        int blockCount = index.getInt();
+        firstIds = new int[blockCount];
+        lastIds = new int[blockCount];
+        offsets = new int[blockCount];
+        compressedLengths = new int[blockCount];
+        rawLengths = new int[blockCount];
+        int count = 0;
+        for (int i = 0; i < blockCount; i++) {
+            firstIds[i] = index.getInt();
+            lastIds[i] = index.getInt();
+            offsets[i] = (int) index.getLong();
+            compressedLengths[i] = index.getInt();
+            rawLengths[i] = index.getInt();
+            count += index.getInt();
+        }
+        messageCount = count;
+
+        ByteBuffer users = buffer.duplicate().position(usersOffset);
+        int userCount = users.getInt();
+        postedBys = new int[userCount];
+        blocksByPostedBy = new int[userCount][];
+        countsByPostedBy = new int[userCount];
+        firstsByPostedBy = new long[userCount];
+        lastsByPostedBy = new long[userCount];
+        for (int i = 0; i < userCount; i++) {
+            postedBys[i] = users.getInt();
+            int[] blocks = new int[users.getInt()];
+            for (int j = 0; j < blocks.length; j++) {
+                blocks[j] = users.getInt();
+            }
+            blocksByPostedBy[i] = blocks;
+            countsByPostedBy[i] = users.getInt();
+            firstsByPostedBy[i] = users.getLong();
+            lastsByPostedBy[i] = users.getLong();
+        }
+    }
+
+    /**
+     * Maps an existing segment file.
+     * @param path
+     * @return MessageSegment
+     * @throws IOException if the file cannot be read
+     * @throws IllegalStateException if the file is not a segment
+     */
+    public static MessageSegment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new MessageSegment(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Writes messages to a new segment file. The file is written under a temporary name, synced, and then
+     * moved into place, so a segment at path is always complete.
+     * @param path
+     * @param messages
+     * @param blockMessages the number of messages compressed together
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Path path, List<Message> messages, int blockMessages) throws IOException {
+        List<Message> sorted = new ArrayList<>(messages);
+        sorted.sort(Comparator.comparing(Message::getMessageId));
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+        DataOutputStream index = new DataOutputStream(indexBytes);
+        Map<Integer, List<Integer>> blocksByPostedBy = new TreeMap<>();
+        Map<Integer, long[]> summaries = new TreeMap<>();
+        Deflater deflater = new Deflater();
+
+        try (FileOutputStream file = new FileOutputStream(temp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            int blockCount = (sorted.size() + blockMessages - 1) / blockMessages;
+            index.writeInt(blockCount);
+            for (int block = 0; block < blockCount; block++) {
+                List<Message> contents = sorted.subList(block * blockMessages,
+                        Math.min(sorted.size(), (block + 1) * blockMessages));
+                byte[] raw = encode(contents);
+                byte[] compressed = deflate(deflater, raw);
+
+                index.writeInt(contents.get(0).getMessageId());
+                index.writeInt(contents.get(contents.size() - 1).getMessageId());
+                index.writeLong(out.size());
+                index.writeInt(compressed.length);
+                index.writeInt(raw.length);
+                index.writeInt(contents.size());
+                out.write(compressed);
+
+                for (Message message : contents) {
+                    if (message.getPostedBy() != null) {
+                        List<Integer> blocks = blocksByPostedBy.computeIfAbsent(message.getPostedBy(), k -> new ArrayList<>());
+                        if (blocks.isEmpty() || blocks.get(blocks.size() - 1) != block) {
+                            blocks.add(block);
+                        }
+                        summarize(summaries, message);
+                    }
+                }
+            }
+
+            long indexOffset = out.size();
+            out.write(indexBytes.toByteArray());
+
+            long usersOffset = out.size();
+            out.writeInt(blocksByPostedBy.size());
+            for (Map.Entry<Integer, List<Integer>> entry : blocksByPostedBy.entrySet()) {
+                out.writeInt(entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (int block : entry.getValue()) {
+                    out.writeInt(block);
+                }
+                long[] summary = summaries.get(entry.getKey());
+                out.writeInt((int) summary[0]);
+                out.writeLong(summary[1]);
+                out.writeLong(summary[2]);
+            }
+
+            out.writeLong(indexOffset);
+            out.writeLong(usersOffset);
+            out.writeInt(MAGIC);
+            out.flush();
+            file.getFD().sync();
+        } finally {
+            deflater.end();
+        }
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int getMessageCount() {
+        return messageCount;
+    }
+
+    public long getSizeBytes() {
+        return buffer.limit();
+    }
+
+    /**
+     * @param messageId
+     * @return the archived message, or null if it is not in this segment
+     */
+    public Message findByMessageId(int messageId) {
+        if (firstIds.length == 0 || messageId < firstIds[0] || messageId > lastIds[lastIds.length - 1]) {
+            return null;
+        }
+        int block = Arrays.binarySearch(firstIds, messageId);
+        if (block < 0) {
+            block = -block - 2;
+        }
+        if (messageId > lastIds[block]) {
+            return null;
+        }
+        for (Message message : readBlock(block)) {
+            if (message.getMessageId() == messageId) {
+                return message;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param postedBy
+     * @return the archived messages posted by this user, sorted by messageId
+     */
+    public List<Message> findAllByPostedBy(int postedBy) {
+        int user = Arrays.binarySearch(postedBys, postedBy);
+        List<Message> result = new ArrayList<>();
+        if (user < 0) {
+            return result;
+        }
+        for (int block : blocksByPostedBy[user]) {
+            for (Message message : readBlock(block)) {
+                if (message.getPostedBy() != null && message.getPostedBy() == postedBy) {
+                    result.add(message);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Counts each account's messages in this segment and their time range, read from the users section.
+     * @return one summary per postedBy
+     */
+    public List<PostedBySummary> summarizeByPostedBy() {
+        List<PostedBySummary> result = new ArrayList<>(postedBys.length);
+        for (int i = 0; i < postedBys.length; i++) {
+            result.add(summary(i));
+        }
+        return result;
+    }
+
+    /**
+     * @param postedBy
+     * @return the account's count and time range in this segment, or null if it has no messages here
+     */
+    public PostedBySummary summarizePostedBy(int postedBy) {
+        int user = Arrays.binarySearch(postedBys, postedBy);
+        return user < 0 ? null : summary(user);
+    }
+
+    private PostedBySummary summary(int user) {
+        boolean hasRange = firstsByPostedBy[user] <= lastsByPostedBy[user];
+        return new PostedBySummary(postedBys[user], (long) countsByPostedBy[user],
+                hasRange ? firstsByPostedBy[user] : null, hasRange ? lastsByPostedBy[user] : null);
+    }
+
+    /**
+     * Calls the action for every archived message, block by block.
+     * @param action
+     */
+    public void forEach(Consumer<Message> action) {
+        for (int block = 0; block < offsets.length; block++) {
+            readBlock(block).forEach(action);
+        }
+    }
+
+    private List<Message> readBlock(int block) {
+        ByteBuffer compressed = buffer.duplicate()
+                .position(offsets[block])
+                .limit(offsets[block] + compressedLengths[block]);
+        byte[] raw = new byte[rawLengths[block]];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int length = 0;
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(raw, length, raw.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Truncated block " + block + " in " + path);
+                }
+                length += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt block " + block + " in " + path, e);
+        } finally {
+            inflater.end();
+        }
+        return decode(ByteBuffer.wrap(raw));
+    }
+
+    /**
+     * Adds a message to its account's count, first and last timePostedEpoch.
+     */
+    private static void summarize(Map<Integer, long[]> summaries, Message message) {
+        long[] summary = summaries.computeIfAbsent(message.getPostedBy(),
+                postedBy -> new long[] {0, Long.MAX_VALUE, Long.MIN_VALUE});
+        summary[0]++;
+        if (message.getTimePostedEpoch() != null) {
+            summary[1] = Math.min(summary[1], message.getTimePostedEpoch());
+            summary[2] = Math.max(summary[2], message.getTimePostedEpoch());
+        }
+    }
+
+    private static byte[] encode(List<Message> messages) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (Message message : messages) {
+            MessageRecordCodec.write(out, message);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<Message> decode(ByteBuffer raw) {
+        List<Message> messages = new ArrayList<>();
+        while (raw.hasRemaining()) {
+            messages.add(MessageRecordCodec.read(raw));
+        }
+        return messages;
+    }
+
+    private static byte[] deflate(Deflater deflater, byte[] raw) {
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 2 + 64);
+        byte[] chunk = new byte[8192];
+        while (!deflater.finished()) {
+            compressed.write(chunk, 0, deflater.deflate(chunk));
+        }
+        return compressed.toByteArray();
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.config;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Guards the /admin endpoints. Requests must carry the configured token in the X-Admin-Token header;
+ * when no token is configured every admin request is refused.
+ */
+public class AdminTokenInterceptor implements HandlerInterceptor {
+
+    public static final String HEADER = "X-Admin-Token";
+
+    private final byte[] token;
+
+    public AdminTokenInterceptor(String token) {
+        this.token = token == null ? new byte[0] : token.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        String provided = request.getHeader(HEADER);
+        if (token.length > 0 && provided != null
+                && MessageDigest.isEqual(token, provided.getBytes(StandardCharsets.UTF_8))) {
+            return true;
+        }
+        response.setStatus(HttpStatus.FORBIDDEN.value());
+        return false;
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.config;
+
+import com.example.entity.Message;
+import com.example.service.MessageJsonCache;
+import com.example.service.OffHeapMessageCache;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.util.Collection;
+
+/**
+ * Writes a Message, or a collection of messages, as JSON by concatenating the cached encoding of each
+ * message instead of running Jackson over the whole response. Views from the off-heap message cache are
+ * copied straight from off-heap memory. Reading is left to the Jackson converter.
+ */
+public class CachedMessageJsonHttpMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+
+    private static final int OPEN_ARRAY = '[';
+    private static final int SEPARATOR = ',';
+    private static final int CLOSE_ARRAY = ']';
+
+    private final MessageJsonCache messageJsonCache;
+
+    public CachedMessageJsonHttpMessageConverter(MessageJsonCache messageJsonCache) {
+        super(MediaType.APPLICATION_JSON);
+        this.messageJsonCache = messageJsonCache;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return Message.class.isAssignableFrom(clazz) || Collection.class.isAssignableFrom(clazz)
+                || OffHeapMessageCache.MessageView.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        if (!canWrite(mediaType)) {
+            return false;
+        }
+        if (OffHeapMessageCache.MessageView.class.isAssignableFrom(clazz)) {
+            return true;
+        }
+        ResolvableType resolved = ResolvableType.forType(type != null ? type : clazz);
+        Class<?> raw = resolved.resolve(clazz);
+        if (raw == null) {
+            return false;
+        }
+        if (Message.class.isAssignableFrom(raw)) {
+            return true;
+        }
+        return Collection.class.isAssignableFrom(raw)
+                && Message.class.equals(resolved.asCollection().resolveGeneric(0));
+    }
+
+    @Override
+    protected void writeInternal(Object body, Type type, HttpOutputMessage outputMessage) throws IOException {
+        OutputStream out = outputMessage.getBody();
+        if (body instanceof OffHeapMessageCache.MessageView) {
+            ((OffHeapMessageCache.MessageView) body).writeJson(out);
+            return;
+        }
+        if (body instanceof OffHeapMessageCache.TimelineView) {
+            ((OffHeapMessageCache.TimelineView) body).writeJson(out);
+            return;
+        }
+        if (body instanceof Message) {
+            out.write(messageJsonCache.bytesFor((Message) body));
+            return;
+        }
+
+        out.write(OPEN_ARRAY);
+        boolean first = true;
+        for (Object element : (Collection<?>) body) {
+            if (!first) {
+                out.write(SEPARATOR);
+            }
+            out.write(messageJsonCache.bytesFor((Message) element));
+            first = false;
+        }
+        out.write(CLOSE_ARRAY);
+    }
+
+    @Override
+    public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Reading is handled by the Jackson converter.", inputMessage);
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Reading is handled by the Jackson converter.", inputMessage);
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.config;
+
+import com.example.metrics.SqlStatementMetrics;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+/**
+ * Wraps every DataSource bean in a datasource-proxy that reports each executed statement to
+ * SqlStatementMetrics. The pool underneath is untouched, so the Hikari metrics still bind to it.
+ */
+@Component
+public class DataSourceProxyBeanPostProcessor implements BeanPostProcessor {
+
+    private final ObjectProvider<SqlStatementMetrics> sqlStatementMetrics;
+
+    public DataSourceProxyBeanPostProcessor(ObjectProvider<SqlStatementMetrics> sqlStatementMetrics) {
+        this.sqlStatementMetrics = sqlStatementMetrics;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof DataSource) || bean instanceof ProxyDataSource) {
+            return bean;
+        }
+        return ProxyDataSourceBuilder.create((DataSource) bean)
+                .name(beanName)
+                .listener(new LazyListener(sqlStatementMetrics))
+                .build();
+    }
+
+    /**
+     * Looks SqlStatementMetrics up on first use, so this post processor does not force it to be created
+     * before the rest of the context.
+     */
+    private static final class LazyListener implements QueryExecutionListener {
+        private final ObjectProvider<SqlStatementMetrics> provider;
+        private volatile SqlStatementMetrics delegate;
+
+        private LazyListener(ObjectProvider<SqlStatementMetrics> provider) {
+            this.provider = provider;
+        }
+
+        @Override
+        public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+            delegate().beforeQuery(execInfo, queryInfoList);
+        }
+
+        @Override
+        public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+            delegate().afterQuery(execInfo, queryInfoList);
+        }
+
+        private SqlStatementMetrics delegate() {
+            SqlStatementMetrics metrics = delegate;
+            if (metrics == null) {
+                metrics = provider.getObject();
+                delegate = metrics;
+            }
+            return metrics;
+        }
+    }
+}
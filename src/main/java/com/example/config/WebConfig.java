@@ -0,0 +1,41 @@
+package com.example.config;
+
+import com.example.profiling.HandlerEventInterceptor;
+import com.example.service.MessageJsonCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    private final MessageJsonCache messageJsonCache;
+    private final String adminToken;
+
+    @Autowired
+    public WebConfig(MessageJsonCache messageJsonCache, @Value("${socialmedia.admin.token:}") String adminToken) {
+        this.messageJsonCache = messageJsonCache;
+        this.adminToken = adminToken;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new AdminTokenInterceptor(adminToken)).addPathPatterns("/admin/**");
+        registry.addInterceptor(new HandlerEventInterceptor());
+    }
+
+    /**
+     * Messages are written from their cached JSON bytes ahead of the Jackson converter. Smile and CBOR
+     * requests still fall through to Jackson.
+     * @param converters
+     */
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(0, new CachedMessageJsonHttpMessageConverter(messageJsonCache));
+    }
+}
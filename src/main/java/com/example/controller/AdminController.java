@@ -0,0 +1,240 @@
+package com.example.controller;
+
+import com.example.metrics.SqlStatementMetrics;
+import com.example.profiling.ProfilingService;
+import com.example.service.BulkImportService;
+import com.example.service.DatabaseBackupService;
+import com.example.service.MessageArchiveService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Operational endpoints. Every /admin request must carry the X-Admin-Token header.
+ */
+@RestController
+@RequestMapping("/admin")
+public class AdminController {
+
+    private static final String CSV = "text/csv";
+    private static final String NDJSON = "application/x-ndjson";
+
+    private final DatabaseBackupService databaseBackupService;
+    private final MessageArchiveService messageArchiveService;
+    private final BulkImportService bulkImportService;
+    private final ProfilingService profilingService;
+    private final SqlStatementMetrics sqlStatementMetrics;
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public AdminController(DatabaseBackupService databaseBackupService, MessageArchiveService messageArchiveService,
+                           BulkImportService bulkImportService, ProfilingService profilingService,
+                           SqlStatementMetrics sqlStatementMetrics, ObjectMapper objectMapper) {
+        this.databaseBackupService = databaseBackupService;
+        this.messageArchiveService = messageArchiveService;
+        this.bulkImportService = bulkImportService;
+        this.profilingService = profilingService;
+        this.sqlStatementMetrics = sqlStatementMetrics;
+        this.objectMapper = objectMapper;
+    }
+
+    /*
+     * Handler to take an online backup of the database.
+     * The response status should be 200, and the body should name the backup file and its size.
+     * If the database is in-memory, the response status should be 409. (Conflict)
+     */
+    @PostMapping("/backup")
+    public ResponseEntity<Map<String, Object>> backup() throws IOException {
+        try {
+            long start = System.nanoTime();
+            Path file = databaseBackupService.backup();
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("file", file.toString());
+            body.put("bytes", Files.size(file));
+            body.put("millis", (System.nanoTime() - start) / 1_000_000);
+            return ResponseEntity.ok(body);
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+
+    /*
+     * Handler to move messages posted before a timePostedEpoch cutoff into the archive tier.
+     * The response status should be 200, and the body should count the segments, messages and bytes written.
+     * If archiving is disabled, the response status should be 409. (Conflict)
+     */
+    @PostMapping("/archive")
+    public ResponseEntity<Map<String, Object>> archive(@RequestParam long before) throws IOException {
+        try {
+            long start = System.nanoTime();
+            MessageArchiveService.ArchiveRun run = messageArchiveService.archiveBefore(before);
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("segments", run.getSegments());
+            body.put("messages", run.getMessages());
+            body.put("bytes", run.getBytes());
+            body.put("millis", (System.nanoTime() - start) / 1_000_000);
+            return ResponseEntity.ok(body);
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+
+    /*
+     * Handler to take a Java Flight Recorder recording for some seconds with the "default" or "profile" settings.
+     * The response status should be 200 once the recording ends, and the body is the .jfr file, streamed from
+     * disk and deleted once sent; with download=false the file is kept on the server instead, and the body
+     * names it and its size.
+     * If the duration or settings are invalid, the response status should be 400. (Client error)
+     * If a recording is already running, the response status should be 409. (Conflict)
+     */
+    @PostMapping("/profile")
+    public ResponseEntity<?> profile(@RequestParam(defaultValue = "30") long seconds,
+                                     @RequestParam(defaultValue = "default") String settings,
+                                     @RequestParam(defaultValue = "true") boolean download)
+            throws IOException, InterruptedException {
+        Path file;
+        try {
+            file = profilingService.record(Duration.ofSeconds(seconds), settings);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        if (download) {
+            // The converter closes the stream once the body is written, which deletes the file.
+            InputStreamResource recording = new InputStreamResource(
+                    Files.newInputStream(file, StandardOpenOption.DELETE_ON_CLOSE));
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                    .header(HttpHeaders.CONTENT_DISPOSITION,
+                            ContentDisposition.attachment().filename(file.getFileName().toString()).build().toString())
+                    .body(recording);
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("file", file.toString());
+        body.put("bytes", Files.size(file));
+        body.put("seconds", seconds);
+        return ResponseEntity.ok(body);
+    }
+
+    /*
+     * Handler to reset the per-statement SQL counts and timings shown by /actuator/datasource.
+     * The response status should be 204.
+     */
+    @DeleteMapping("/sql-statements")
+    public ResponseEntity<Void> resetSqlStatements() {
+        sqlStatementMetrics.reset();
+        return ResponseEntity.noContent().build();
+    }
+
+    /*
+     * Handler to import accounts from a CSV body (header row: username,password) or an NDJSON body.
+     * The response status should be 200, and the body is NDJSON: one {"line","reason"} object per rejected row
+     * as it is rejected, then {"imported","rejected","millis"}. A CSV body without the needed columns gets 400.
+     */
+    @PostMapping(value = "/import/accounts", consumes = {CSV, NDJSON})
+    public void importAccounts(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        runImport(request, response, bulkImportService::importAccounts);
+    }
+
+    /*
+     * Handler to import messages from a CSV body (header row: postedBy,messageText,timePostedEpoch) or an
+     * NDJSON body. The response is the same as for /admin/import/accounts.
+     */
+    @PostMapping(value = "/import/messages", consumes = {CSV, NDJSON})
+    public void importMessages(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        runImport(request, response, bulkImportService::importMessages);
+    }
+
+    private interface Importer {
+        BulkImportService.ImportResult run(Reader input, BulkImportService.Format format,
+                                           BulkImportService.RejectHandler rejects) throws IOException;
+    }
+
+    private void runImport(HttpServletRequest request, HttpServletResponse response, Importer importer) throws IOException {
+        MediaType contentType = MediaType.parseMediaType(request.getContentType());
+        BulkImportService.Format format = contentType.isCompatibleWith(MediaType.parseMediaType(CSV))
+                ? BulkImportService.Format.CSV : BulkImportService.Format.NDJSON;
+        Charset charset = contentType.getCharset() != null ? contentType.getCharset() : StandardCharsets.UTF_8;
+        long start = System.nanoTime();
+
+        NdjsonReport report = new NdjsonReport(response);
+        BulkImportService.ImportResult result;
+        try {
+            result = importer.run(new InputStreamReader(request.getInputStream(), charset), format, report);
+        } catch (IllegalArgumentException e) {
+            if (report.started()) {
+                throw e;
+            }
+            response.sendError(HttpStatus.BAD_REQUEST.value(), e.getMessage());
+            return;
+        }
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("imported", result.getImported());
+        summary.put("rejected", result.getRejected());
+        summary.put("millis", (System.nanoTime() - start) / 1_000_000);
+        report.write(summary);
+        report.flush();
+    }
+
+    /**
+     * Writes rejects to the response as they come; the response is only started by the first line.
+     */
+    private final class NdjsonReport implements BulkImportService.RejectHandler {
+        private final HttpServletResponse response;
+        private Writer out;
+
+        private NdjsonReport(HttpServletResponse response) {
+            this.response = response;
+        }
+
+        @Override
+        public void reject(long line, String reason) throws IOException {
+            Map<String, Object> reject = new LinkedHashMap<>();
+            reject.put("line", line);
+            reject.put("reason", reason);
+            write(reject);
+        }
+
+        private void write(Map<String, Object> object) throws IOException {
+            if (out == null) {
+                response.setContentType(NDJSON);
+                out = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+            }
+            out.write(objectMapper.writeValueAsString(object));
+            out.write('\n');
+        }
+
+        private boolean started() {
+            return out != null;
+        }
+
+        private void flush() throws IOException {
+            out.flush();
+        }
+    }
+}
@@ -2,26 +2,52 @@ package com.example.controller;
 
 import com.example.entity.Account;
 import com.example.entity.Message;
+import com.example.idempotency.IdempotencyService;
+import com.example.ratelimit.RateLimitService;
 import com.example.service.AccountService;
+import com.example.service.AccountStatsService;
 import com.example.service.MessageService;
+import com.example.service.MessageStreamService;
+import com.example.service.OffHeapMessageCache;
+import com.example.service.Result;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import javax.servlet.http.HttpServletRequest;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 public class SocialMediaController {
 
+    private static final String ACCOUNT_ID_HEADER = "X-Account-Id";
+
     private final AccountService accountService;
     private final MessageService messageService;
+    private final MessageStreamService messageStreamService;
+    private final RateLimitService rateLimitService;
+    private final AccountStatsService accountStatsService;
+    private final IdempotencyService idempotencyService;
 
     @Autowired
-    public SocialMediaController(AccountService accountService, MessageService messageService) {
+    public SocialMediaController(AccountService accountService, MessageService messageService,
+                                 MessageStreamService messageStreamService, RateLimitService rateLimitService,
+                                 AccountStatsService accountStatsService, IdempotencyService idempotencyService) {
         this.accountService = accountService;
         this.messageService = messageService;
+        this.messageStreamService = messageStreamService;
+        this.rateLimitService = rateLimitService;
+        this.accountStatsService = accountStatsService;
+        this.idempotencyService = idempotencyService;
     }
 
     /*
@@ -29,17 +55,24 @@ public class SocialMediaController {
      * The response status should be 200 OK, which is the default. The new account should be persisted to the database.
      * If the registration is not successful due to a duplicate username, the response status should be 409. (Conflict)
      * If the registration is not successful for some other reason, the response status should be 400. (Client error)
+     * If the client has registered too many accounts recently, the response status should be 429 with a Retry-After header.
+     * A retry carrying the same Idempotency-Key header gets the first response replayed.
      */
     @PostMapping("/register")
-    public ResponseEntity<Account> registerUser(@RequestBody Account account) {
-        try {
-            Account createdAccount = accountService.registerAccount(account);
-            return ResponseEntity.ok(createdAccount);
-        } catch (IllegalArgumentException e) {
-            return ResponseEntity.badRequest().build();
-        } catch (IllegalStateException e) {
-            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+    public ResponseEntity<Account> registerUser(@RequestBody Account account, HttpServletRequest request,
+                                                @RequestHeader(value = IdempotencyService.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+        return idempotencyService.execute("POST /register", idempotencyKey,
+                Arrays.asList(account.getUsername(), account.getPassword()), () -> register(account, request));
+    }
+
+    private ResponseEntity<Account> register(Account account, HttpServletRequest request) {
+        long retryAfter = rateLimitService.checkRegister(request.getRemoteAddr());
+        if (retryAfter > 0) {
+            return tooManyRequests(retryAfter);
         }
+
+        Result<Account> createdAccount = accountService.registerAccount(account);
+        return createdAccount.isOk() ? ResponseEntity.ok(createdAccount.getValue()) : failed(createdAccount);
     }
 
     /* 
@@ -50,49 +83,140 @@ public class SocialMediaController {
 
     @PostMapping("/login")
     public ResponseEntity<Account> loginUser(@RequestBody Account account) {
-        try {
-            String username = account.getUsername();
-            String password = account.getPassword();
-            
-            Account loggedInAccount = accountService.login(username, password);
-            return ResponseEntity.ok(loggedInAccount);
-        } catch (IllegalArgumentException e) {
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
-        }
+        String username = account.getUsername();
+        String password = account.getPassword();
+
+        Result<Account> loggedInAccount = accountService.login(username, password);
+        return loggedInAccount.isOk() ? ResponseEntity.ok(loggedInAccount.getValue()) : failed(loggedInAccount);
     }
 
     /* 
      * Handler to create a new message.
      * The response status should be 200, which is the default. The new message should be persisted to the database.
      * If the creation of the message is not successful, the response status should be 400. (Client error)
+     * If the client or the posting user has created too many messages recently, the response status should be 429
+     * with a Retry-After header.
+     * With write-behind ingestion enabled, the 200 is sent once the message's batch commits. A client sending
+     * "Prefer: respond-async" instead gets 202 (Accepted) as soon as the message is queued, and 503 if the queue is full.
+     * A retry carrying the same Idempotency-Key header gets the first response replayed; reusing a key for a
+     * different message gets 422.
      */
     @PostMapping("/messages")
-    public ResponseEntity<Message> createMessage(@RequestBody Message message) {
+    public ResponseEntity<Message> createMessage(@RequestBody Message message, HttpServletRequest request,
+                                                 @RequestHeader(value = IdempotencyService.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+        return idempotencyService.execute("POST /messages", idempotencyKey,
+                Arrays.asList(message.getPostedBy(), message.getMessageText(), message.getTimePostedEpoch()),
+                () -> create(message, request));
+    }
+
+    private ResponseEntity<Message> create(Message message, HttpServletRequest request) {
+        long retryAfter = rateLimitService.checkCreateMessage(request.getRemoteAddr(), message.getPostedBy());
+        if (retryAfter > 0) {
+            return tooManyRequests(retryAfter);
+        }
+
+        if (!messageService.isWriteBehind()) {
+            Result<Message> createdMessage = messageService.createMessage(message);
+            return createdMessage.isOk() ? ResponseEntity.ok(createdMessage.getValue()) : failed(createdMessage);
+        }
+
+        Result<CompletableFuture<Message>> submitted = messageService.submitMessage(message);
+        if (!submitted.isOk()) {
+            return failed(submitted);
+        }
         try {
-            Message createdMessage = messageService.createMessage(message);
-            return ResponseEntity.ok(createdMessage);
-        } catch (IllegalArgumentException e) {
-            return ResponseEntity.badRequest().build();
+            CompletableFuture<Message> pending = submitted.getValue();
+            String prefer = request.getHeader("Prefer");
+            if (prefer != null && prefer.contains("respond-async") && !pending.isCompletedExceptionally()) {
+                return ResponseEntity.accepted().build();
+            }
+            return ResponseEntity.ok(pending.join());
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RejectedExecutionException) {
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header(HttpHeaders.RETRY_AFTER, "1")
+                        .build();
+            }
+            throw e;
         }
     }
 
     /* 
      * Handler to retrieve all messages.
      * The response status should always be 200, which is the default.
+     * An X-Account-Id header names the reading account, so it sees its own recent writes when replicas lag.
+     * With since, until, page or size, the response is one page of the messages posted in [since, until),
+     * ordered by timePostedEpoch; an invalid page or size gets 400. (Client error)
      */
     @GetMapping("/messages")
-    public ResponseEntity<List<Message>> getAllMessages() {
-        List<Message> messages = messageService.getAllMessages();
-        return ResponseEntity.ok(messages);
+    public ResponseEntity<List<Message>> getAllMessages(@RequestHeader(value = ACCOUNT_ID_HEADER, required = false) Integer readerId,
+                                                        @RequestParam(required = false) Long since,
+                                                        @RequestParam(required = false) Long until,
+                                                        @RequestParam(required = false) Integer page,
+                                                        @RequestParam(required = false) Integer size) {
+        if (since == null && until == null && page == null && size == null) {
+            List<Message> messages = messageService.getAllMessages(readerId);
+            return ResponseEntity.ok(messages);
+        }
+        try {
+            return ResponseEntity.ok(messageService.getMessagesPostedBetween(since, until, page, size, readerId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /*
+     * Handler to retrieve many messages by ID in one request, e.g. GET /messages?ids=1,2,3.
+     * The response status should be 200, with the found messages in request order and the IDs that do not exist.
+     * If more than 500 IDs are requested, or one is empty, the response status should be 400. (Client error)
+     */
+    @GetMapping(value = "/messages", params = "ids")
+    public ResponseEntity<MessageService.MessageBatch> getMessagesByIds(@RequestParam List<Integer> ids,
+                                                                        @RequestHeader(value = ACCOUNT_ID_HEADER, required = false) Integer readerId) {
+        try {
+            return ResponseEntity.ok(messageService.getMessagesByIds(ids, readerId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /*
+     * Handler to retrieve the newest messages, e.g. GET /messages?latest=20, served from memory.
+     * The response status should be 200, with up to that many messages, newest first.
+     * If the count is below 1 or above socialmedia.latest.capacity, the response status should be 400. (Client error)
+     */
+    @GetMapping(value = "/messages", params = "latest")
+    public ResponseEntity<List<Message>> getLatestMessages(@RequestParam int latest) {
+        try {
+            return ResponseEntity.ok(messageService.getLatestMessages(latest));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /*
+     * Handler to stream newly created messages as Server-Sent Events, optionally only those posted by one user.
+     * The response status should always be 200, which is the default. Each message is sent as a "message" event.
+     */
+    @GetMapping(value = "/messages/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamMessages(@RequestParam(required = false) Integer postedBy) {
+        return messageStreamService.subscribe(postedBy);
     }
 
     /*
      * Handler to retrieve a message by its ID.
      * The response status should always be 200, which is the default.
+     * An X-Account-Id header names the reading account, so it sees its own recent writes when replicas lag.
+     * Messages in the off-heap cache are written straight from it.
      */
     @GetMapping("/messages/{messageId}")
-    public ResponseEntity<Message> getMessageById(@PathVariable int messageId) {
-        Message message = messageService.getMessageById(messageId);
+    public ResponseEntity<?> getMessageById(@PathVariable int messageId,
+                                            @RequestHeader(value = ACCOUNT_ID_HEADER, required = false) Integer readerId) {
+        OffHeapMessageCache.MessageView cached = messageService.getCachedMessageById(messageId);
+        if (cached != null) {
+            return ResponseEntity.ok(cached);
+        }
+        Message message = messageService.getMessageById(messageId, readerId);
         return ResponseEntity.ok(message);
     }
 
@@ -113,22 +237,64 @@ public class SocialMediaController {
      */
     @PatchMapping("/messages/{messageId}")
     public ResponseEntity<?> updateMessageText(@PathVariable int messageId, @RequestBody Message message) {
-        try {
-            int rowsUpdated = messageService.updateMessageText(messageId, message);
-            System.out.println("Rows updated: " + rowsUpdated);
-            return ResponseEntity.ok(rowsUpdated);
-        } catch (IllegalArgumentException e) {
-            return ResponseEntity.badRequest().build();
+        Result<Integer> rowsUpdated = messageService.updateMessageText(messageId, message);
+        if (!rowsUpdated.isOk()) {
+            return failed(rowsUpdated);
         }
+        System.out.println("Rows updated: " + rowsUpdated.getValue());
+        return ResponseEntity.ok(rowsUpdated.getValue());
     }
 
     /* 
      * Handler to retrieve all messages by a user.
      * The response status should always be 200, which is the default.
+     * With since, until, page or size, the response is one page of the user's messages posted in [since, until),
+     * ordered by timePostedEpoch; an invalid page or size gets 400. (Client error)
      */
     @GetMapping("/accounts/{accountId}/messages")
-    public ResponseEntity<List<Message>> getMessagesByUser(@PathVariable Integer accountId) {
-        List<Message> messages = messageService.getMessagesByUserId(accountId);
-        return ResponseEntity.ok(messages);
+    public ResponseEntity<List<Message>> getMessagesByUser(@PathVariable Integer accountId,
+                                                           @RequestParam(required = false) Long since,
+                                                           @RequestParam(required = false) Long until,
+                                                           @RequestParam(required = false) Integer page,
+                                                           @RequestParam(required = false) Integer size) {
+        if (since == null && until == null && page == null && size == null) {
+            List<Message> messages = messageService.getMessagesByUserId(accountId);
+            return ResponseEntity.ok(messages);
+        }
+        try {
+            return ResponseEntity.ok(messageService.getMessagesByUserIdPostedBetween(accountId, since, until, page, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /*
+     * Handler to retrieve a user's message count and first and last timePostedEpoch.
+     * The response status should always be 200, which is the default; a user without messages has a count of 0.
+     */
+    @GetMapping("/accounts/{accountId}/stats")
+    public ResponseEntity<AccountStatsService.AccountStats> getAccountStats(@PathVariable int accountId) {
+        return ResponseEntity.ok(accountStatsService.getStats(accountId));
+    }
+
+    /**
+     * Maps an expected failure from a service to its response: 400 for invalid input, 401 for bad credentials,
+     * 409 for a conflict.
+     */
+    private static <T> ResponseEntity<T> failed(Result<?> result) {
+        switch (result.getStatus()) {
+            case UNAUTHORIZED:
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+            case CONFLICT:
+                return ResponseEntity.status(HttpStatus.CONFLICT).build();
+            default:
+                return ResponseEntity.badRequest().build();
+        }
+    }
+
+    private static <T> ResponseEntity<T> tooManyRequests(long retryAfterSeconds) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .build();
     }
 }
\ No newline at end of file
@@ -0,0 +1,20 @@
+package com.example.event;
+
+import com.example.entity.Message;
+
+/**
+ * Published by MessageService once a new message has been saved. Listeners that only care about committed
+ * data should use @TransactionalEventListener so they run after the enclosing transaction commits.
+ */
+public class MessageCreatedEvent {
+
+    private final Message message;
+
+    public MessageCreatedEvent(Message message) {
+        this.message = message;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+}
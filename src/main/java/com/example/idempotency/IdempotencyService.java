@@ -0,0 +1,81 @@
+package com.example.idempotency;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.function.Supplier;
+
+/**
+ * Replays responses for requests carrying an Idempotency-Key header, so a client retrying after a network
+ * failure gets the original response and the create is not repeated. Keys are scoped by endpoint. Responses
+ * a retry could turn out differently for (429, 503 and other 5xx) are shared with concurrent duplicates but
+ * not replayed later.
+ */
+@Service
+public class IdempotencyService {
+
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final IdempotencyStore<ResponseEntity<?>> store;
+
+    @Autowired
+    public IdempotencyService(@Value("${socialmedia.idempotency.ttl-millis:86400000}") long ttlMillis,
+                              @Value("${socialmedia.idempotency.max-keys:100000}") int maxKeys) {
+        this.store = new IdempotencyStore<>(ttlMillis, maxKeys);
+    }
+
+    /**
+     * Runs the handler, or replays the response of an earlier request with the same key.
+     * @param scope the endpoint, e.g. "POST /messages"
+     * @param key the Idempotency-Key header, or null to run the handler without deduplication
+     * @param request the request body; reusing a key for a different body gets a 422
+     * @param handler
+     * @return the response, with an Idempotent-Replayed header if it was not produced by this call
+     */
+    @SuppressWarnings("unchecked")
+    public <T> ResponseEntity<T> execute(String scope, String key, Object request, Supplier<ResponseEntity<T>> handler) {
+        if (key == null) {
+            return handler.get();
+        }
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        boolean[] ran = new boolean[1];
+        ResponseEntity<?> response;
+        try {
+            response = store.execute(scope + " " + key, request, () -> {
+                ran[0] = true;
+                return handler.get();
+            }, IdempotencyService::isReplayable);
+        } catch (IllegalStateException e) {
+            return ResponseEntity.unprocessableEntity().build();
+        }
+        if (ran[0]) {
+            return (ResponseEntity<T>) response;
+        }
+        return (ResponseEntity<T>) ResponseEntity.status(response.getStatusCode())
+                .headers(response.getHeaders())
+                .header(REPLAYED_HEADER, "true")
+                .body(response.getBody());
+    }
+
+    @Scheduled(fixedDelayString = "${socialmedia.idempotency.sweep-millis:60000}")
+    public void evictExpiredKeys() {
+        int evicted = store.evictExpired();
+        if (evicted > 0) {
+            System.out.println("Evicted expired idempotency keys: " + evicted);
+        }
+    }
+
+    private static boolean isReplayable(ResponseEntity<?> response) {
+        HttpStatus status = response.getStatusCode();
+        return status != HttpStatus.TOO_MANY_REQUESTS && !status.is5xxServerError();
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.idempotency;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the result of each keyed operation for a while, so a retry with the same key gets the first
+ * result back instead of running the operation again.
+ *
+ * The first caller for a key runs the operation; callers arriving while it runs wait on the same future
+ * (single-flight) rather than racing it. Keys are kept in a ConcurrentHashMap and, in insertion order, in a
+ * queue, which evictExpired() drains from the head; when the table outgrows maxKeys the oldest finished
+ * keys are dropped early. Keys whose operation is still running are never dropped.
+ *
+ * @param <V> the result type
+ */
+public class IdempotencyStore<V> {
+
+    private final long ttlNanos;
+    private final int maxKeys;
+    private final ConcurrentHashMap<String, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Entry<V>> insertionOrder = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param ttlMillis how long a finished result is replayed
+     * @param maxKeys the number of keys kept before the oldest finished ones are dropped early
+     */
+    public IdempotencyStore(long ttlMillis, int maxKeys) {
+        if (ttlMillis <= 0 || maxKeys < 1) {
+            throw new IllegalArgumentException("TTL and maximum key count must be positive.");
+        }
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * Runs the operation once per key, or returns the result of the run already made or in progress.
+     * @param key
+     * @param request what the operation was asked to do; a key reused for a different request is rejected
+     * @param operation
+     * @param cacheable whether a result should be replayed to later callers; other results are still shared
+     *                  with callers already waiting, but the next caller runs the operation again
+     * @return the result
+     * @throws IllegalStateException if the key was used for a different request
+     */
+    public V execute(String key, Object request, Supplier<V> operation, Predicate<V> cacheable) {
+        while (true) {
+            Entry<V> mine = new Entry<>(key, request);
+            Entry<V> existing = entries.putIfAbsent(key, mine);
+            if (existing == null) {
+                insertionOrder.add(mine);
+                trim();
+                return run(mine, operation, cacheable);
+            }
+            if (existing.isExpired(System.nanoTime(), ttlNanos)) {
+                entries.remove(key, existing);
+                continue;
+            }
+            if (!Objects.equals(existing.request, request)) {
+                throw new IllegalStateException("Idempotency key reused for a different request.");
+            }
+            try {
+                return existing.result.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+    }
+
+    private V run(Entry<V> entry, Supplier<V> operation, Predicate<V> cacheable) {
+        V result;
+        try {
+            result = operation.get();
+        } catch (RuntimeException | Error e) {
+            entries.remove(entry.key, entry);
+            entry.result.completeExceptionally(e);
+            throw e;
+        }
+        if (!cacheable.test(result)) {
+            entries.remove(entry.key, entry);
+        }
+        entry.finishedAt = System.nanoTime();
+        entry.result.complete(result);
+        return result;
+    }
+
+    /**
+     * Drops keys whose result has been replayable for the TTL.
+     * @return the number of keys dropped
+     */
+    public int evictExpired() {
+        long now = System.nanoTime();
+        int evicted = 0;
+        for (Entry<V> head = insertionOrder.peek(); head != null; head = insertionOrder.peek()) {
+            if (!head.result.isDone()) {
+                break;
+            }
+            if (entries.get(head.key) == head && !head.isExpired(now, ttlNanos)) {
+                break;
+            }
+            if (insertionOrder.remove(head) && entries.remove(head.key, head)) {
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    private void trim() {
+        while (entries.size() > maxKeys) {
+            Entry<V> head = insertionOrder.peek();
+            if (head == null || !head.result.isDone()) {
+                return;
+            }
+            if (insertionOrder.remove(head)) {
+                entries.remove(head.key, head);
+            }
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private static final class Entry<V> {
+        private final String key;
+        private final Object request;
+        private final CompletableFuture<V> result = new CompletableFuture<>();
+        private volatile long finishedAt;
+
+        private Entry(String key, Object request) {
+            this.key = key;
+            this.request = request;
+        }
+
+        private boolean isExpired(long now, long ttlNanos) {
+            return result.isDone() && now - finishedAt > ttlNanos;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.metrics;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * /actuator/datasource: a snapshot of the connection pool and of the per-statement SQL counts and timings.
+ * Acquire time histograms are published by Hikari itself as hikaricp.connections.acquire under /actuator/metrics.
+ * The endpoint is read-only; the statement counters are reset with DELETE /admin/sql-statements.
+ */
+@Component
+@Endpoint(id = "datasource")
+public class DataSourceEndpoint {
+
+    private final DataSource dataSource;
+    private final SqlStatementMetrics sqlStatementMetrics;
+
+    @Autowired
+    public DataSourceEndpoint(DataSource dataSource, SqlStatementMetrics sqlStatementMetrics) {
+        this.dataSource = dataSource;
+        this.sqlStatementMetrics = sqlStatementMetrics;
+    }
+
+    @ReadOperation
+    public Map<String, Object> datasource() throws SQLException {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("pool", pool());
+        result.put("totalStatements", sqlStatementMetrics.getTotalStatements());
+        result.put("statements", statements());
+        return result;
+    }
+
+    private Map<String, Object> pool() throws SQLException {
+        Map<String, Object> pool = new LinkedHashMap<>();
+        if (!dataSource.isWrapperFor(HikariDataSource.class)) {
+            return pool;
+        }
+        HikariDataSource hikari = dataSource.unwrap(HikariDataSource.class);
+        pool.put("name", hikari.getPoolName());
+        pool.put("maximumPoolSize", hikari.getMaximumPoolSize());
+        pool.put("minimumIdle", hikari.getMinimumIdle());
+        pool.put("leakDetectionThresholdMillis", hikari.getLeakDetectionThreshold());
+        HikariPoolMXBean poolBean = hikari.getHikariPoolMXBean();
+        if (poolBean != null) {
+            pool.put("active", poolBean.getActiveConnections());
+            pool.put("idle", poolBean.getIdleConnections());
+            pool.put("pending", poolBean.getThreadsAwaitingConnection());
+            pool.put("total", poolBean.getTotalConnections());
+        }
+        return pool;
+    }
+
+    private List<Map<String, Object>> statements() {
+        List<Map<String, Object>> statements = new ArrayList<>();
+        for (SqlStatementMetrics.StatementStats stats : sqlStatementMetrics.getStatements()) {
+            Map<String, Object> statement = new LinkedHashMap<>();
+            statement.put("sql", stats.getSql());
+            statement.put("count", stats.getCount());
+            statement.put("errors", stats.getErrors());
+            statement.put("totalMillis", toMillis(stats.getTotalNanos()));
+            statement.put("meanMillis", toMillis(stats.getTotalNanos() / Math.max(1, stats.getCount())));
+            statement.put("maxMillis", toMillis(stats.getMaxNanos()));
+            statements.add(statement);
+        }
+        return statements;
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Counts and times every SQL statement run through the application DataSource, keyed by statement text.
+ *
+ * Hibernate generates the same text for each repository method, so there is one entry per query shape. IN
+ * lists are collapsed to "in (?...)", so a lookup by 3 ids and one by 30 share an entry. At most
+ * socialmedia.sql-metrics.max-statements shapes get their own entry; later ones are counted under "other".
+ * Each entry is also published as a jdbc.statement timer tagged with the SQL. The shapes that got their own
+ * entry keep it across resets, so resets do not let new shapes register more timers.
+ */
+@Component
+public class SqlStatementMetrics implements QueryExecutionListener, MeterBinder {
+
+    public static final String OTHER = "other";
+
+    private static final Pattern IN_LIST = Pattern.compile("(?i)\\bin\\s*\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+
+    private final int maxStatements;
+    private final ConcurrentHashMap<String, StatementStats> statements = new ConcurrentHashMap<>();
+    private final Set<String> shapes = ConcurrentHashMap.newKeySet();
+    private final LongAdder totalStatements = new LongAdder();
+    private final ThreadLocal<long[]> startNanos = ThreadLocal.withInitial(() -> new long[1]);
+    private volatile MeterRegistry meterRegistry;
+
+    public SqlStatementMetrics(@Value("${socialmedia.sql-metrics.max-statements:100}") int maxStatements) {
+        this.maxStatements = maxStatements;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.meterRegistry = registry;
+    }
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        startNanos.get()[0] = System.nanoTime();
+    }
+
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        long elapsedNanos = System.nanoTime() - startNanos.get()[0];
+        for (QueryInfo queryInfo : queryInfoList) {
+            String sql = normalise(queryInfo.getQuery());
+            StatementStats stats = statements.get(sql);
+            if (stats == null) {
+                stats = statements.computeIfAbsent(hasOwnEntry(sql) ? sql : OTHER, this::newStats);
+            }
+            if (stats.timer == null && meterRegistry != null) {
+                // Statements run while the context starts are seen before the registry is bound.
+                stats.timer = newTimer(stats.getSql());
+            }
+            stats.record(elapsedNanos, execInfo.isSuccess());
+            totalStatements.increment();
+        }
+    }
+
+    /**
+     * @return the number of statements executed since startup or the last reset
+     */
+    public long getTotalStatements() {
+        return totalStatements.sum();
+    }
+
+    /**
+     * @return per-statement counts and timings, slowest total first
+     */
+    public List<StatementStats> getStatements() {
+        List<StatementStats> result = new ArrayList<>(statements.values());
+        result.sort(Comparator.comparingLong(StatementStats::getTotalNanos).reversed());
+        return result;
+    }
+
+    public void reset() {
+        statements.clear();
+        totalStatements.reset();
+    }
+
+    /**
+     * The bound can be overshot by a few concurrent first sightings, which is harmless.
+     */
+    private boolean hasOwnEntry(String sql) {
+        if (shapes.contains(sql)) {
+            return true;
+        }
+        if (shapes.size() >= maxStatements) {
+            return false;
+        }
+        shapes.add(sql);
+        return true;
+    }
+
+    /**
+     * @return the statement with every IN list of placeholders collapsed to one
+     */
+    public static String normalise(String sql) {
+        return IN_LIST.matcher(sql).replaceAll("in (?...)");
+    }
+
+    private StatementStats newStats(String sql) {
+        return new StatementStats(sql, meterRegistry == null ? null : newTimer(sql));
+    }
+
+    private Timer newTimer(String sql) {
+        return Timer.builder("jdbc.statement")
+                .description("SQL statement execution time")
+                .tag("sql", sql)
+                .register(meterRegistry);
+    }
+
+    public static final class StatementStats {
+        private final String sql;
+        private volatile Timer timer;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        private StatementStats(String sql, Timer timer) {
+            this.sql = sql;
+            this.timer = timer;
+        }
+
+        private void record(long nanos, boolean success) {
+            count.increment();
+            if (!success) {
+                errors.increment();
+            }
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+            Timer current = timer;
+            if (current != null) {
+                current.record(nanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One SocialMediaController request, from the handler being chosen until the response is complete.
+ */
+@Name("com.example.Handler")
+@Label("Request Handler")
+@Description("A SocialMediaController handler and the response it produced")
+@Category({"Social Media", "HTTP"})
+@StackTrace(false)
+public class HandlerEvent extends jdk.jfr.Event {
+
+    @Label("Handler")
+    String handler;
+
+    @Label("Method")
+    String method;
+
+    @Label("Path")
+    String path;
+
+    @Label("Status")
+    int status;
+}
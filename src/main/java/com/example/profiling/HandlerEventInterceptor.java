@@ -0,0 +1,50 @@
+package com.example.profiling;
+
+import com.example.controller.SocialMediaController;
+import jdk.jfr.EventType;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Wraps each SocialMediaController handler in a HandlerEvent, so flight recordings show request-level spans.
+ * Nothing is recorded, and no event is created, unless a recording has the event enabled.
+ */
+public class HandlerEventInterceptor implements HandlerInterceptor {
+
+    private static final EventType EVENT_TYPE = EventType.getEventType(HandlerEvent.class);
+    private static final String EVENT_ATTRIBUTE = HandlerEventInterceptor.class.getName() + ".event";
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (EVENT_TYPE.isEnabled() && handler instanceof HandlerMethod
+                && ((HandlerMethod) handler).getBeanType() == SocialMediaController.class) {
+            HandlerEvent event = new HandlerEvent();
+            event.begin();
+            request.setAttribute(EVENT_ATTRIBUTE, event);
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        Object attribute = request.getAttribute(EVENT_ATTRIBUTE);
+        if (!(attribute instanceof HandlerEvent)) {
+            return;
+        }
+        HandlerEvent event = (HandlerEvent) attribute;
+        event.end();
+        if (event.shouldCommit()) {
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            event.handler = ((HandlerMethod) handler).getMethod().getName();
+            event.method = request.getMethod();
+            event.path = pattern != null ? pattern.toString() : request.getRequestURI();
+            event.status = response.getStatus();
+            event.commit();
+        }
+    }
+}
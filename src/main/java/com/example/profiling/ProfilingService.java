@@ -0,0 +1,79 @@
+package com.example.profiling;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Takes Java Flight Recorder recordings on demand, one at a time, into socialmedia.profiling.dir.
+ *
+ * A recording uses one of the JDK's settings files ("default" for continuous use, "profile" for more detail)
+ * and always includes the HandlerEvent and RepositoryEvent spans. Recordings are capped at
+ * socialmedia.profiling.max-seconds.
+ */
+@Service
+public class ProfilingService {
+
+    private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+
+    private final Path profileDir;
+    private final long maxSeconds;
+    private final AtomicBoolean recording = new AtomicBoolean();
+
+    @Autowired
+    public ProfilingService(@Value("${socialmedia.profiling.dir:./data/profiles}") String profileDir,
+                            @Value("${socialmedia.profiling.max-seconds:300}") long maxSeconds) {
+        this.profileDir = Paths.get(profileDir);
+        this.maxSeconds = maxSeconds;
+    }
+
+    /**
+     * Records for the given time and writes the recording to a new .jfr file. Blocks until the recording ends.
+     * @param duration
+     * @param settings the name of a JDK settings file, e.g. default or profile
+     * @return the path of the recording
+     * @throws IllegalArgumentException if the duration is not positive or above the maximum, or the settings
+     *                                  are unknown
+     * @throws IllegalStateException if a recording is already running
+     * @throws IOException if the recording cannot be written
+     * @throws InterruptedException if interrupted while recording; the recording is discarded
+     */
+    public Path record(Duration duration, String settings) throws IOException, InterruptedException {
+        if (duration.isNegative() || duration.isZero() || duration.getSeconds() > maxSeconds) {
+            throw new IllegalArgumentException("Duration must be between 1 and " + maxSeconds + " seconds.");
+        }
+        Configuration configuration = Configuration.getConfigurations().stream()
+                .filter(candidate -> candidate.getName().equals(settings))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown JFR settings: " + settings));
+        if (!recording.compareAndSet(false, true)) {
+            throw new IllegalStateException("A recording is already running.");
+        }
+        try (Recording jfr = new Recording(configuration)) {
+            jfr.setName("socialmedia-" + settings);
+            jfr.enable(HandlerEvent.class);
+            jfr.enable(RepositoryEvent.class);
+            Files.createDirectories(profileDir);
+            Path file = profileDir.resolve("profile-" + LocalDateTime.now().format(FILE_TIMESTAMP) + ".jfr");
+
+            jfr.start();
+            Thread.sleep(duration.toMillis());
+            jfr.stop();
+            jfr.dump(file);
+            return file;
+        } finally {
+            recording.set(false);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One call into a MessageStore or a Spring Data repository.
+ */
+@Name("com.example.Repository")
+@Label("Repository Call")
+@Description("A call into a message store or repository")
+@Category({"Social Media", "Repository"})
+@StackTrace(false)
+public class RepositoryEvent extends jdk.jfr.Event {
+
+    @Label("Repository")
+    String repository;
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Failed")
+    boolean failed;
+}
@@ -0,0 +1,62 @@
+package com.example.profiling;
+
+import jdk.jfr.EventType;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Wraps every call into the message stores and Spring Data repositories in a RepositoryEvent. Calls nest, so
+ * a MessageStore call shows the repository calls it made inside its span. The event is only created while a
+ * recording has it enabled; otherwise a call costs one volatile read and allocates nothing.
+ */
+@Aspect
+@Component
+public class RepositoryEventAspect {
+
+    private static final EventType EVENT_TYPE = EventType.getEventType(RepositoryEvent.class);
+
+    private final ConcurrentHashMap<Class<?>, String> names = new ConcurrentHashMap<>();
+
+    @Around("within(com.example.repository..*) || this(org.springframework.data.repository.Repository)")
+    public Object record(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (!EVENT_TYPE.isEnabled()) {
+            return joinPoint.proceed();
+        }
+        RepositoryEvent event = new RepositoryEvent();
+        event.begin();
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable e) {
+            event.failed = true;
+            throw e;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.repository = names.computeIfAbsent(joinPoint.getThis().getClass(), RepositoryEventAspect::name);
+                event.operation = joinPoint.getSignature().getName();
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Spring Data repositories are proxies of a generic implementation; they are named by their own interface.
+     */
+    private static String name(Class<?> proxyClass) {
+        for (Class<?> type = proxyClass; type != null; type = type.getSuperclass()) {
+            if (type.getName().startsWith("com.example.") && !type.getName().contains("$")) {
+                return type.getSimpleName();
+            }
+        }
+        for (Class<?> contract : proxyClass.getInterfaces()) {
+            if (contract.getName().startsWith("com.example.")) {
+                return contract.getSimpleName();
+            }
+        }
+        return proxyClass.getSimpleName();
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.ratelimit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limits message creation per posting account and per client address, and registration per client
+ * address. Registration and message creation have separate address buckets, so a burst of one from a shared
+ * address does not use up the other. The check methods return 0 when the request may proceed, otherwise the
+ * number of seconds the client should wait, for use in a Retry-After header.
+ *
+ * Disabled unless socialmedia.rate-limit.enabled=true.
+ */
+@Service
+public class RateLimitService {
+
+    private final boolean enabled;
+    private final TokenBucketRateLimiter<Integer> accountLimiter;
+    private final TokenBucketRateLimiter<String> addressLimiter;
+    private final TokenBucketRateLimiter<String> registerLimiter;
+
+    @Autowired
+    public RateLimitService(@Value("${socialmedia.rate-limit.enabled:false}") boolean enabled,
+                            @Value("${socialmedia.rate-limit.account-capacity:60}") int accountCapacity,
+                            @Value("${socialmedia.rate-limit.account-refill-per-second:10}") double accountRefill,
+                            @Value("${socialmedia.rate-limit.address-capacity:200}") int addressCapacity,
+                            @Value("${socialmedia.rate-limit.address-refill-per-second:100}") double addressRefill,
+                            @Value("${socialmedia.rate-limit.register-capacity:20}") int registerCapacity,
+                            @Value("${socialmedia.rate-limit.register-refill-per-second:1}") double registerRefill,
+                            @Value("${socialmedia.rate-limit.idle-millis:300000}") long idleMillis) {
+        this.enabled = enabled;
+        this.accountLimiter = new TokenBucketRateLimiter<>(accountCapacity, accountRefill, idleMillis);
+        this.addressLimiter = new TokenBucketRateLimiter<>(addressCapacity, addressRefill, idleMillis);
+        this.registerLimiter = new TokenBucketRateLimiter<>(registerCapacity, registerRefill, idleMillis);
+    }
+
+    /**
+     * @param remoteAddress
+     * @param postedBy
+     * @return 0 if the message may be created, otherwise the Retry-After delay in seconds
+     */
+    public long checkCreateMessage(String remoteAddress, Integer postedBy) {
+        if (!enabled) {
+            return 0;
+        }
+        long wait = addressLimiter.tryAcquire(remoteAddress);
+        if (wait == 0 && postedBy != null) {
+            wait = accountLimiter.tryAcquire(postedBy);
+        }
+        return toRetryAfterSeconds(wait);
+    }
+
+    /**
+     * @param remoteAddress
+     * @return 0 if the account may be registered, otherwise the Retry-After delay in seconds
+     */
+    public long checkRegister(String remoteAddress) {
+        if (!enabled) {
+            return 0;
+        }
+        return toRetryAfterSeconds(registerLimiter.tryAcquire(remoteAddress));
+    }
+
+    @Scheduled(fixedDelayString = "${socialmedia.rate-limit.sweep-millis:60000}")
+    public void evictIdleBuckets() {
+        int evicted = accountLimiter.evictIdle() + addressLimiter.evictIdle() + registerLimiter.evictIdle();
+        if (evicted > 0) {
+            System.out.println("Evicted idle rate limit buckets: " + evicted);
+        }
+    }
+
+    private static long toRetryAfterSeconds(long waitNanos) {
+        if (waitNanos == 0) {
+            return 0;
+        }
+        return Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+    }
+}
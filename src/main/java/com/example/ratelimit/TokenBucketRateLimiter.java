@@ -0,0 +1,80 @@
+package com.example.ratelimit;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A table of token buckets, one per key.
+ *
+ * Each bucket is a single AtomicLong holding its "theoretical arrival time" (the generic cell rate
+ * algorithm), which behaves exactly like a token bucket with the given capacity and refill rate but is
+ * updated with one compare-and-set and no locks. The table is a ConcurrentHashMap, and buckets that have
+ * refilled completely and stayed idle are dropped by evictIdle().
+ *
+ * @param <K> the key type, e.g. an account id or a client address
+ */
+public class TokenBucketRateLimiter<K> {
+
+    private final long emissionIntervalNanos;
+    private final long burstToleranceNanos;
+    private final long idleNanos;
+    private final ConcurrentHashMap<K, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * @param capacity the number of requests that may be made back to back
+     * @param refillPerSecond the number of tokens added per second
+     * @param idleMillis how long a full bucket is kept before it can be evicted
+     */
+    public TokenBucketRateLimiter(int capacity, double refillPerSecond, long idleMillis) {
+        if (capacity < 1 || refillPerSecond <= 0) {
+            throw new IllegalArgumentException("Capacity and refill rate must be positive.");
+        }
+        this.emissionIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / refillPerSecond);
+        this.burstToleranceNanos = emissionIntervalNanos * (capacity - 1);
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+    }
+
+    /**
+     * Takes one token from the key's bucket.
+     * @param key
+     * @return 0 if a token was taken, otherwise the number of nanoseconds until one will be available
+     */
+    public long tryAcquire(K key) {
+        return tryAcquire(key, System.nanoTime());
+    }
+
+    long tryAcquire(K key, long now) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+        }
+
+        while (true) {
+            long arrival = bucket.get();
+            long start = arrival - now > 0 ? arrival : now;
+            long wait = start - now - burstToleranceNanos;
+            if (wait > 0) {
+                return wait;
+            }
+            if (bucket.compareAndSet(arrival, start + emissionIntervalNanos)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Removes buckets that are full and have not been used for the idle period.
+     * @return the number of buckets removed
+     */
+    public int evictIdle() {
+        long now = System.nanoTime();
+        int before = buckets.size();
+        buckets.values().removeIf(bucket -> now - bucket.get() > idleNanos);
+        return before - buckets.size();
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.replica;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Remembers which accounts wrote messages recently, so their own reads can skip replicas that may not have
+ * caught up yet. For read-your-writes-millis after a write, reads on behalf of that account go to the primary.
+ *
+ * The record is kept in this application instance only. Without replicas every read goes to the primary anyway.
+ */
+@Component
+public class ReadYourWritesTracker {
+
+    private final long windowNanos;
+    private final Map<Integer, Long> lastWrites = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ReadYourWritesTracker(@Value("${socialmedia.replicas.read-your-writes-millis:5000}") long windowMillis) {
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+    }
+
+    /**
+     * @param accountId the account that just wrote
+     */
+    public void recordWrite(int accountId) {
+        if (windowNanos > 0) {
+            lastWrites.put(accountId, System.nanoTime());
+        }
+    }
+
+    /**
+     * @param accountId
+     * @return true if the account wrote within the window
+     */
+    public boolean isRecentWriter(Integer accountId) {
+        if (accountId == null) {
+            return false;
+        }
+        Long lastWrite = lastWrites.get(accountId);
+        return lastWrite != null && System.nanoTime() - lastWrite < windowNanos;
+    }
+
+    /**
+     * Runs a read on behalf of an account, on the primary if that account wrote within the window.
+     * @param accountId the reading account, or null if unknown
+     * @param read
+     * @return the result of the read
+     */
+    public <T> T read(Integer accountId, Supplier<T> read) {
+        return isRecentWriter(accountId) ? ReplicaRoutingDataSource.onPrimary(read) : read.get();
+    }
+
+    @Scheduled(fixedDelayString = "${socialmedia.replicas.sweep-millis:60000}")
+    public void evictExpired() {
+        long now = System.nanoTime();
+        lastWrites.values().removeIf(lastWrite -> now - lastWrite >= windowNanos);
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.replica;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read/write splitting, enabled with socialmedia.replicas.enabled=true.
+ *
+ * Replaces Boot's single pool with a primary pool built from spring.datasource.* and one pool per URL in
+ * socialmedia.replicas.urls, all with the spring.datasource.hikari.* settings. Read-only transactions go to a
+ * replica; see ReplicaRoutingDataSource. Hibernate is told to give its connection back after each transaction,
+ * so one request can read from a replica and then write to the primary.
+ *
+ * socialmedia.replicas.init-script runs a script against each replica at startup. It is meant for local runs
+ * with embedded H2 instances standing in for replicas, which nothing replicates to.
+ */
+@Configuration
+@ConditionalOnProperty(name = "socialmedia.replicas.enabled", havingValue = "true")
+public class ReplicaDataSourceConfig implements DisposableBean {
+
+    private final List<HikariDataSource> pools = new ArrayList<>();
+
+    @Bean
+    public DataSource dataSource(DataSourceProperties properties, Environment environment, ResourceLoader resourceLoader,
+                                 ObjectProvider<MeterRegistry> meterRegistry,
+                                 @Value("${socialmedia.replicas.urls}") String[] replicaUrls,
+                                 @Value("${socialmedia.replicas.init-script:}") String initScript) {
+        HikariDataSource primary = createPool(properties, environment, properties.determineUrl(), null);
+
+        List<HikariDataSource> replicas = new ArrayList<>();
+        for (int i = 0; i < replicaUrls.length; i++) {
+            HikariDataSource replica = createPool(properties, environment, replicaUrls[i].trim(), "replica-" + i);
+            meterRegistry.ifAvailable(registry ->
+                    replica.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry)));
+            if (!initScript.isEmpty()) {
+                new ResourceDatabasePopulator(resourceLoader.getResource(initScript)).execute(replica);
+            }
+            replicas.add(replica);
+        }
+        System.out.println("Routing read-only transactions to " + replicas.size() + " replicas.");
+        return new LazyConnectionDataSourceProxy(new ReplicaRoutingDataSource(primary, replicas));
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer releaseConnectionAfterTransaction() {
+        return properties -> properties.put(AvailableSettings.CONNECTION_HANDLING,
+                "DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION");
+    }
+
+    @Override
+    public void destroy() {
+        for (HikariDataSource pool : pools) {
+            pool.close();
+        }
+    }
+
+    private HikariDataSource createPool(DataSourceProperties properties, Environment environment, String url,
+                                        String suffix) {
+        HikariDataSource pool = properties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .url(url)
+                .build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(pool));
+        if (suffix != null) {
+            pool.setPoolName((pool.getPoolName() == null ? "HikariPool" : pool.getPoolName()) + "-" + suffix);
+        }
+        pools.add(pool);
+        return pool;
+    }
+}
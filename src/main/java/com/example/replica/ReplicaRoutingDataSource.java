@@ -0,0 +1,66 @@
+package com.example.replica;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Sends connections for read-only transactions to the replicas, round robin, and everything else to the
+ * primary. The decision is made when the connection is first used, so this must sit behind a
+ * LazyConnectionDataSourceProxy for the transaction's read-only flag to be known by then.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    private static final String PRIMARY = "primary";
+    private static final ThreadLocal<Boolean> PRIMARY_ONLY = new ThreadLocal<>();
+
+    private final List<String> replicaKeys = new ArrayList<>();
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    public ReplicaRoutingDataSource(DataSource primary, List<? extends DataSource> replicas) {
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (int i = 0; i < replicas.size(); i++) {
+            String key = "replica-" + i;
+            targets.put(key, replicas.get(i));
+            replicaKeys.add(key);
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    /**
+     * Runs a read with every connection it opens taken from the primary, even in read-only transactions.
+     * @param read
+     * @return the result of the read
+     */
+    public static <T> T onPrimary(Supplier<T> read) {
+        Boolean previous = PRIMARY_ONLY.get();
+        PRIMARY_ONLY.set(Boolean.TRUE);
+        try {
+            return read.get();
+        } finally {
+            if (previous == null) {
+                PRIMARY_ONLY.remove();
+            }
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (replicaKeys.isEmpty()
+                || PRIMARY_ONLY.get() != null
+                || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return PRIMARY;
+        }
+        return replicaKeys.get(Math.floorMod(nextReplica.getAndIncrement(), replicaKeys.size()));
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.repository;
+
+import com.example.entity.Message;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * The default MessageStore: the message table in the application database, through MessageRepository.
+ */
+@Repository
+@ConditionalOnProperty(name = "socialmedia.message-store", havingValue = "jpa", matchIfMissing = true)
+public class JpaMessageStore implements MessageStore {
+
+    private static final int IN_CHUNK = 1000;
+    /** H2's error code for an insert whose foreign key names no row: REFERENTIAL_INTEGRITY_VIOLATED_PARENT_MISSING. */
+    private static final int MISSING_PARENT_ROW = 23506;
+
+    private final MessageRepository messageRepository;
+
+    @Autowired
+    public JpaMessageStore(MessageRepository messageRepository) {
+        this.messageRepository = messageRepository;
+    }
+
+    @Override
+    public Message save(Message message) {
+        return messageRepository.save(message);
+    }
+
+    @Override
+    public List<Message> saveAll(List<Message> messages) {
+        return messageRepository.saveAll(messages);
+    }
+
+    /**
+     * Inserts without looking the account up: the postedBy foreign key, the message table's only one, rejects
+     * an unknown account. Flushes inside the save so the violation surfaces here, not when a caller's
+     * transaction commits; callers must not hold a transaction open, since the failed flush rolls it back.
+     * Any other integrity violation is rethrown.
+     */
+    @Override
+    public Message saveCheckingPostedBy(Message message, IntPredicate accountExists) {
+        try {
+            return messageRepository.saveAndFlush(message);
+        } catch (DataIntegrityViolationException e) {
+            Throwable cause = NestedExceptionUtils.getMostSpecificCause(e);
+            if (!(cause instanceof SQLException) || ((SQLException) cause).getErrorCode() != MISSING_PARENT_ROW) {
+                throw e;
+            }
+            message.setMessageId(null);
+            return null;
+        }
+    }
+
+    @Override
+    public Message findByMessageId(int messageId) {
+        return messageRepository.findByMessageId(messageId);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Message> findAllByMessageIds(List<Integer> messageIds) {
+        List<Message> result = new ArrayList<>(messageIds.size());
+        for (int start = 0; start < messageIds.size(); start += IN_CHUNK) {
+            result.addAll(messageRepository.findByMessageIdIn(
+                    messageIds.subList(start, Math.min(messageIds.size(), start + IN_CHUNK))));
+        }
+        return result;
+    }
+
+    @Override
+    public List<Message> findAll() {
+        return messageRepository.findAll();
+    }
+
+    @Override
+    public PostedBySummary summarizePostedBy(int postedBy) {
+        return messageRepository.summarizePostedBy(postedBy);
+    }
+
+    @Override
+    public List<Message> findLatest(int limit) {
+        return messageRepository.findAllByOrderByMessageIdDesc(PageRequest.of(0, limit));
+    }
+
+    @Override
+    public List<PostedBySummary> summarizeByPostedBy() {
+        return messageRepository.summarizeByPostedBy();
+    }
+
+    @Override
+    public List<Message> findAllByPostedBy(int postedBy) {
+        return messageRepository.findAllByPostedBy(postedBy);
+    }
+
+    @Override
+    public List<Message> findPostedBetween(long since, long until, int page, int size) {
+        return messageRepository.findPostedBetween(since, until, PageRequest.of(page, size));
+    }
+
+    @Override
+    public List<Message> findPostedBetweenByPostedBy(int postedBy, long since, long until, int page, int size) {
+        return messageRepository.findPostedBetweenByPostedBy(postedBy, since, until, PageRequest.of(page, size));
+    }
+
+    @Override
+    @Transactional
+    public Message updateMessageText(int messageId, String messageText) {
+        Message message = messageRepository.findByMessageId(messageId);
+        if (message == null) {
+            return null;
+        }
+        message.setMessageText(messageText);
+        return messageRepository.save(message);
+    }
+
+    @Override
+    @Transactional
+    public Message deleteByMessageId(int messageId) {
+        Message message = messageRepository.findByMessageId(messageId);
+        if (message == null) {
+            return null;
+        }
+        messageRepository.delete(message);
+        return message;
+    }
+
+    @Override
+    public List<Message> findPostedBefore(long timePostedEpoch, int limit) {
+        return messageRepository.findByTimePostedEpochLessThanOrderByMessageId(timePostedEpoch, PageRequest.of(0, limit));
+    }
+
+    @Override
+    @Transactional
+    public int deleteByMessageIds(List<Integer> messageIds) {
+        int deleted = 0;
+        for (int start = 0; start < messageIds.size(); start += IN_CHUNK) {
+            deleted += messageRepository.deleteByMessageIdIn(
+                    messageIds.subList(start, Math.min(messageIds.size(), start + IN_CHUNK)));
+        }
+        return deleted;
+    }
+}
@@ -0,0 +1,579 @@
+package com.example.repository;
+
+import com.example.entity.Message;
+import com.example.util.IntLongHashMap;
+import com.example.util.MessageRecordCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of messages, selected with socialmedia.message-store=log.
+ *
+ * Every save, update and delete appends a record to messages.log: length, CRC32, then the payload (a type
+ * byte and the message in MessageRecordCodec form; deletes are tombstones carrying only id and postedBy).
+ * An IntLongHashMap maps each live messageId to its latest record, packed as offset and length, with a second
+ * map per postedBy for timelines. Reads are a single positional read.
+ *
+ * On startup the log is replayed to rebuild the indexes. A record cut short or failing its checksum marks the
+ * end of the log: it and anything after it are from a write that never completed, and are truncated.
+ *
+ * Overwritten records and tombstones are garbage. Once they pass socialmedia.log-store.compaction.garbage-ratio
+ * of the file, compaction copies the live records to a new file and swaps it in; writes are only blocked while
+ * records appended during the copy are carried over.
+ */
+@Repository
+@Lazy(false)
+@ConditionalOnProperty(name = "socialmedia.message-store", havingValue = "log")
+public class LogMessageStore implements MessageStore {
+
+    private static final String LOG_FILE = "messages.log";
+    private static final String COMPACT_FILE = "messages.log.compact";
+
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final byte SEQUENCE = 3;
+
+    private static final int HEADER_BYTES = 8;
+    private static final int LENGTH_BITS = 20;
+    private static final long LENGTH_MASK = (1L << LENGTH_BITS) - 1;
+
+    private final Path dir;
+    private final boolean syncWrites;
+    private final double compactionGarbageRatio;
+    private final long compactionMinBytes;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object compactionMonitor = new Object();
+
+    private FileChannel channel;
+    private long end;
+    private int nextMessageId = 1;
+    private Index index = new Index();
+
+    @Autowired
+    public LogMessageStore(@Value("${socialmedia.log-store.dir:./data/log-store}") String dir,
+                           @Value("${socialmedia.log-store.sync-writes:true}") boolean syncWrites,
+                           @Value("${socialmedia.log-store.compaction.garbage-ratio:0.5}") double compactionGarbageRatio,
+                           @Value("${socialmedia.log-store.compaction.min-bytes:1048576}") long compactionMinBytes)
+            throws IOException {
+        this.dir = Paths.get(dir);
+        this.syncWrites = syncWrites;
+        this.compactionGarbageRatio = compactionGarbageRatio;
+        this.compactionMinBytes = compactionMinBytes;
+
+        Files.createDirectories(this.dir);
+        Files.deleteIfExists(this.dir.resolve(COMPACT_FILE));
+        channel = FileChannel.open(this.dir.resolve(LOG_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        recover();
+        System.out.println("Message log recovered: " + index.byId.size() + " messages, " + end + " bytes.");
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            channel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Message save(Message message) {
+        return saveAll(List.of(message)).get(0);
+    }
+
+    @Override
+    public List<Message> saveAll(List<Message> messages) {
+        lock.writeLock().lock();
+        try {
+            List<byte[]> records = new ArrayList<>(messages.size());
+            for (Message message : messages) {
+                message.setMessageId(nextMessageId++);
+                records.add(record(PUT, message));
+            }
+            long[] locations = append(records);
+            for (int i = 0; i < messages.size(); i++) {
+                index.put(messages.get(i).getMessageId(), messages.get(i).getPostedBy(), locations[i]);
+            }
+            return messages;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Message findByMessageId(int messageId) {
+        lock.readLock().lock();
+        try {
+            long location = index.byId.get(messageId);
+            return location == IntLongHashMap.MISSING ? null : read(location);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Message> findAllByMessageIds(List<Integer> messageIds) {
+        List<Message> result = new ArrayList<>(messageIds.size());
+        lock.readLock().lock();
+        try {
+            for (int messageId : messageIds) {
+                long location = index.byId.get(messageId);
+                if (location != IntLongHashMap.MISSING) {
+                    result.add(read(location));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    @Override
+    public List<Message> findAll() {
+        lock.readLock().lock();
+        try {
+            return readAll(index.byId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Message> findAllByPostedBy(int postedBy) {
+        lock.readLock().lock();
+        try {
+            IntLongHashMap locations = index.byPostedBy.get(postedBy);
+            return locations == null ? new ArrayList<>() : readAll(locations);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Message updateMessageText(int messageId, String messageText) {
+        lock.writeLock().lock();
+        try {
+            long location = index.byId.get(messageId);
+            if (location == IntLongHashMap.MISSING) {
+                return null;
+            }
+            Message message = read(location);
+            message.setMessageText(messageText);
+            index.put(messageId, message.getPostedBy(), append(List.of(record(PUT, message)))[0]);
+            return message;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Message deleteByMessageId(int messageId) {
+        lock.writeLock().lock();
+        try {
+            long location = index.byId.get(messageId);
+            if (location == IntLongHashMap.MISSING) {
+                return null;
+            }
+            Message message = read(location);
+            long tombstone = append(List.of(tombstone(message)))[0];
+            index.delete(messageId, message.getPostedBy(), tombstone);
+            return message;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Message> findPostedBefore(long timePostedEpoch, int limit) {
+        List<Message> result = new ArrayList<>();
+        for (Message message : findAll()) {
+            if (message.getTimePostedEpoch() != null && message.getTimePostedEpoch() < timePostedEpoch) {
+                result.add(message);
+                if (result.size() == limit) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<Message> findPostedBetween(long since, long until, int page, int size) {
+        return pageByTimePosted(findAll(), since, until, page, size);
+    }
+
+    @Override
+    public List<Message> findPostedBetweenByPostedBy(int postedBy, long since, long until, int page, int size) {
+        return pageByTimePosted(findAllByPostedBy(postedBy), since, until, page, size);
+    }
+
+    @Override
+    public int deleteByMessageIds(List<Integer> messageIds) {
+        lock.writeLock().lock();
+        try {
+            List<Message> deleted = new ArrayList<>();
+            List<byte[]> records = new ArrayList<>();
+            for (int messageId : messageIds) {
+                long location = index.byId.get(messageId);
+                if (location != IntLongHashMap.MISSING) {
+                    Message message = read(location);
+                    deleted.add(message);
+                    records.add(tombstone(message));
+                }
+            }
+            if (records.isEmpty()) {
+                return 0;
+            }
+            long[] locations = append(records);
+            for (int i = 0; i < deleted.size(); i++) {
+                index.delete(deleted.get(i).getMessageId(), deleted.get(i).getPostedBy(), locations[i]);
+            }
+            return deleted.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${socialmedia.log-store.compaction.interval-millis:60000}")
+    public void compactIfNeeded() throws IOException {
+        long garbage;
+        long size;
+        lock.readLock().lock();
+        try {
+            garbage = index.garbageBytes;
+            size = end;
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (garbage >= compactionMinBytes && garbage > size * compactionGarbageRatio) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the log with only the live records. Records appended while the live ones are copied are carried
+     * over at the end under the write lock, then the new file replaces the old one.
+     * @throws IOException if the new log cannot be written
+     */
+    public void compact() throws IOException {
+        synchronized (compactionMonitor) {
+            long start = System.nanoTime();
+            long snapshotEnd;
+            long[] live;
+            lock.readLock().lock();
+            try {
+                snapshotEnd = end;
+                live = new long[index.byId.size()];
+                int[] count = {0};
+                index.byId.forEach((messageId, location) -> live[count[0]++] = location);
+            } finally {
+                lock.readLock().unlock();
+            }
+            Arrays.sort(live);
+
+            Path compactPath = dir.resolve(COMPACT_FILE);
+            FileChannel compacted = FileChannel.open(compactPath, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                Index compactedIndex = new Index();
+                OutputStream out = new BufferedOutputStream(Channels.newOutputStream(compacted), 1 << 16);
+                long position = 0;
+
+                lock.readLock().lock();
+                try {
+                    byte[] sequence = record(SEQUENCE, nextMessageId);
+                    out.write(sequence);
+                    position += sequence.length;
+                } finally {
+                    lock.readLock().unlock();
+                }
+
+                for (long location : live) {
+                    ByteBuffer record = readRecord(location);
+                    out.write(record.array());
+                    position = replay(compactedIndex, record, position);
+                }
+
+                lock.writeLock().lock();
+                try {
+                    long tailPosition = snapshotEnd;
+                    while (tailPosition < end) {
+                        ByteBuffer record = readRecordAt(tailPosition);
+                        out.write(record.array());
+                        tailPosition += record.capacity();
+                        position = replay(compactedIndex, record, position);
+                    }
+                    out.flush();
+                    compacted.force(true);
+                    Files.move(compactPath, dir.resolve(LOG_FILE), StandardCopyOption.ATOMIC_MOVE);
+                    syncDirectory();
+
+                    long before = end;
+                    channel.close();
+                    channel = compacted;
+                    end = position;
+                    index = compactedIndex;
+                    System.out.println("Compacted message log from " + before + " to " + end + " bytes in "
+                            + (System.nanoTime() - start) / 1_000_000 + " ms.");
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            } catch (IOException | RuntimeException e) {
+                compacted.close();
+                Files.deleteIfExists(compactPath);
+                throw e;
+            }
+        }
+    }
+
+    private void recover() throws IOException {
+        long position = 0;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+        try {
+            while (true) {
+                int length = in.readInt();
+                int crc = in.readInt();
+                if (length <= 0 || HEADER_BYTES + length > LENGTH_MASK) {
+                    break;
+                }
+                byte[] record = new byte[HEADER_BYTES + length];
+                in.readFully(record, HEADER_BYTES, length);
+                if (crc(record) != crc) {
+                    break;
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(record);
+                buffer.putInt(length).putInt(crc).rewind();
+                position = replay(index, buffer, position);
+            }
+        } catch (EOFException e) {
+            // The last record is incomplete or the log ends cleanly here.
+        }
+
+        long size = channel.size();
+        if (position < size) {
+            System.out.println("Truncating " + (size - position) + " bytes of incomplete message log at " + position);
+            channel.truncate(position);
+            channel.force(true);
+        }
+        end = position;
+        nextMessageId = index.nextMessageId;
+    }
+
+    /**
+     * Applies one record at position to an index.
+     * @return the position after the record
+     */
+    private long replay(Index target, ByteBuffer record, long position) {
+        int length = record.capacity();
+        long location = position << LENGTH_BITS | length;
+        record.position(HEADER_BYTES);
+        byte type = record.get();
+        if (type == SEQUENCE) {
+            target.nextMessageId = Math.max(target.nextMessageId, record.getInt());
+            target.garbageBytes += length;
+            return position + length;
+        }
+        Message message = MessageRecordCodec.read(record);
+        target.nextMessageId = Math.max(target.nextMessageId, message.getMessageId() + 1);
+        if (type == PUT) {
+            target.put(message.getMessageId(), message.getPostedBy(), location);
+        } else {
+            target.delete(message.getMessageId(), message.getPostedBy(), location);
+        }
+        return position + length;
+    }
+
+    private long[] append(List<byte[]> records) {
+        long[] locations = new long[records.size()];
+        int total = 0;
+        for (byte[] record : records) {
+            total += record.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(total);
+        long position = end;
+        for (int i = 0; i < records.size(); i++) {
+            byte[] record = records.get(i);
+            buffer.put(record);
+            locations[i] = position << LENGTH_BITS | record.length;
+            position += record.length;
+        }
+        buffer.flip();
+        try {
+            long writeAt = end;
+            while (buffer.hasRemaining()) {
+                writeAt += channel.write(buffer, writeAt);
+            }
+            if (syncWrites) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        end = position;
+        return locations;
+    }
+
+    /** The log has no time index, so ranges filter and sort the candidates in memory. */
+    private static List<Message> pageByTimePosted(List<Message> messages, long since, long until, int page, int size) {
+        List<Message> inRange = new ArrayList<>();
+        for (Message message : messages) {
+            Long time = message.getTimePostedEpoch();
+            if (time != null && time >= since && time < until) {
+                inRange.add(message);
+            }
+        }
+        inRange.sort(Comparator.comparing(Message::getTimePostedEpoch).thenComparing(Message::getMessageId));
+        int from = (int) Math.min(inRange.size(), (long) page * size);
+        return new ArrayList<>(inRange.subList(from, Math.min(inRange.size(), from + size)));
+    }
+
+    private List<Message> readAll(IntLongHashMap locations) {
+        List<Message> messages = new ArrayList<>(locations.size());
+        locations.forEach((messageId, location) -> messages.add(read(location)));
+        messages.sort(Comparator.comparing(Message::getMessageId));
+        return messages;
+    }
+
+    private Message read(long location) {
+        ByteBuffer record = readRecord(location);
+        record.position(HEADER_BYTES + 1);
+        return MessageRecordCodec.read(record);
+    }
+
+    private ByteBuffer readRecord(long location) {
+        return readFully(location >>> LENGTH_BITS, (int) (location & LENGTH_MASK));
+    }
+
+    private ByteBuffer readRecordAt(long position) {
+        ByteBuffer header = readFully(position, HEADER_BYTES);
+        return readFully(position, HEADER_BYTES + header.getInt(0));
+    }
+
+    private ByteBuffer readFully(long position, int length) {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        try {
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position + buffer.position());
+                if (read < 0) {
+                    throw new EOFException("Message log ends at " + (position + buffer.position()));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer;
+    }
+
+    private void syncDirectory() {
+        try (FileChannel directory = FileChannel.open(dir, StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            // Not every platform can sync a directory; the rename is still atomic.
+        }
+    }
+
+    private static byte[] record(byte type, Message message) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeLong(0);
+            out.writeByte(type);
+            MessageRecordCodec.write(out, message);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return seal(bytes.toByteArray());
+    }
+
+    private static byte[] record(byte type, int value) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + 5);
+        buffer.position(HEADER_BYTES);
+        buffer.put(type).putInt(value);
+        return seal(buffer.array());
+    }
+
+    private static byte[] tombstone(Message message) {
+        return record(DELETE, new Message(message.getMessageId(), message.getPostedBy(), null, null));
+    }
+
+    private static byte[] seal(byte[] record) {
+        ByteBuffer.wrap(record).putInt(record.length - HEADER_BYTES).putInt(crc(record));
+        return record;
+    }
+
+    private static int crc(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record, HEADER_BYTES, record.length - HEADER_BYTES);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Where the live records are, how many bytes of the file are garbage, and the next unused messageId.
+     */
+    private static final class Index {
+        private final IntLongHashMap byId = new IntLongHashMap();
+        private final Map<Integer, IntLongHashMap> byPostedBy = new HashMap<>();
+        private long garbageBytes;
+        private int nextMessageId = 1;
+
+        private void put(int messageId, Integer postedBy, long location) {
+            long previous = byId.put(messageId, location);
+            if (previous != IntLongHashMap.MISSING) {
+                garbageBytes += previous & LENGTH_MASK;
+            }
+            if (postedBy != null) {
+                byPostedBy.computeIfAbsent(postedBy, k -> new IntLongHashMap()).put(messageId, location);
+            }
+        }
+
+        private void delete(int messageId, Integer postedBy, long tombstone) {
+            long previous = byId.remove(messageId);
+            if (previous != IntLongHashMap.MISSING) {
+                garbageBytes += previous & LENGTH_MASK;
+            }
+            garbageBytes += tombstone & LENGTH_MASK;
+            if (postedBy != null) {
+                IntLongHashMap locations = byPostedBy.get(postedBy);
+                if (locations != null) {
+                    locations.remove(messageId);
+                    if (locations.size() == 0) {
+                        byPostedBy.remove(postedBy);
+                    }
+                }
+            }
+        }
+    }
+}
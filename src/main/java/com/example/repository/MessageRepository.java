@@ -1,9 +1,15 @@
 package com.example.repository;
 
 import com.example.entity.Message;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -22,12 +28,94 @@ public interface MessageRepository extends JpaRepository<Message, Integer> {
      * @param messageId
      * @return Message
      */
+    @Transactional(readOnly = true)
     Message findByMessageId(int messageId);
 
+    /**
+     * Find messages by id in one statement.
+     * @param messageIds
+     * @return List<Message>
+     */
+    @Transactional(readOnly = true)
+    List<Message> findByMessageIdIn(Collection<Integer> messageIds);
+
     /**
      * Find all messages posted by a specific user.
      * @param postedBy
      * @return List<Message>
      */
+    @Transactional(readOnly = true)
     List<Message> findAllByPostedBy(int postedBy);
+
+    /**
+     * Find the newest messages, walking the primary key backwards.
+     * @param pageable the first page, sized to the most messages to return
+     * @return List<Message>, highest messageId first
+     */
+    @Transactional(readOnly = true)
+    List<Message> findAllByOrderByMessageIdDesc(Pageable pageable);
+
+    /**
+     * Count each account's messages and their time range in one grouped query.
+     * @return one summary per postedBy
+     */
+    @Transactional(readOnly = true)
+    @Query("select new com.example.repository.PostedBySummary(m.postedBy, count(m), min(m.timePostedEpoch),"
+            + " max(m.timePostedEpoch)) from Message m where m.postedBy is not null group by m.postedBy")
+    List<PostedBySummary> summarizeByPostedBy();
+
+    /**
+     * Count one account's messages and their time range, using the index on (postedBy, timePostedEpoch).
+     * @param postedBy
+     * @return the summary, or null if the account has no messages
+     */
+    @Transactional(readOnly = true)
+    @Query("select new com.example.repository.PostedBySummary(m.postedBy, count(m), min(m.timePostedEpoch),"
+            + " max(m.timePostedEpoch)) from Message m where m.postedBy = :postedBy group by m.postedBy")
+    PostedBySummary summarizePostedBy(@Param("postedBy") int postedBy);
+
+    /**
+     * Find messages posted in [since, until), using the index on timePostedEpoch.
+     * @param since
+     * @param until
+     * @param pageable
+     * @return List<Message>
+     */
+    @Transactional(readOnly = true)
+    @Query("select m from Message m where m.timePostedEpoch >= :since and m.timePostedEpoch < :until"
+            + " order by m.timePostedEpoch, m.messageId")
+    List<Message> findPostedBetween(@Param("since") long since, @Param("until") long until, Pageable pageable);
+
+    /**
+     * Find messages a user posted in [since, until), using the index on (postedBy, timePostedEpoch).
+     * @param postedBy
+     * @param since
+     * @param until
+     * @param pageable
+     * @return List<Message>
+     */
+    @Transactional(readOnly = true)
+    @Query("select m from Message m where m.postedBy = :postedBy"
+            + " and m.timePostedEpoch >= :since and m.timePostedEpoch < :until"
+            + " order by m.timePostedEpoch, m.messageId")
+    List<Message> findPostedBetweenByPostedBy(@Param("postedBy") int postedBy, @Param("since") long since,
+                                              @Param("until") long until, Pageable pageable);
+
+    /**
+     * Find messages posted before a cutoff, lowest messageId first.
+     * @param timePostedEpoch
+     * @param pageable
+     * @return List<Message>
+     */
+    List<Message> findByTimePostedEpochLessThanOrderByMessageId(long timePostedEpoch, Pageable pageable);
+
+    /**
+     * Delete messages by id in one statement.
+     * @param messageIds
+     * @return the number of messages deleted
+     */
+    @Modifying
+    @Transactional
+    @Query("delete from Message m where m.messageId in :messageIds")
+    int deleteByMessageIdIn(@Param("messageIds") Collection<Integer> messageIds);
 }
\ No newline at end of file
@@ -0,0 +1,183 @@
+package com.example.repository;
+
+import com.example.entity.Message;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntPredicate;
+
+/**
+ * The message persistence operations MessageService relies on. JpaMessageStore, backed by MessageRepository,
+ * is the default; socialmedia.message-store selects another implementation.
+ */
+public interface MessageStore {
+
+    /**
+     * Saves a new message and assigns its messageId.
+     * @param message
+     * @return Message
+     */
+    Message save(Message message);
+
+    /**
+     * Saves new messages together, assigning their messageIds.
+     * @param messages
+     * @return the saved messages, in the same order
+     * @throws PartialSaveException if the store could not save the batch atomically and some of the messages
+     *         were saved before it failed
+     */
+    List<Message> saveAll(List<Message> messages);
+
+    /**
+     * Saves a new message only if postedBy is an account, without a transaction around the check and the save.
+     * The default looks the account up, then saves; a store with a foreign key from postedBy to the account
+     * table inserts straight away and lets the key reject an unknown account.
+     * @param message a message whose postedBy is not null
+     * @param accountExists looks an account up by id
+     * @return the saved message, or null if postedBy is not an account
+     */
+    default Message saveCheckingPostedBy(Message message, IntPredicate accountExists) {
+        return accountExists.test(message.getPostedBy()) ? save(message) : null;
+    }
+
+    /**
+     * Find a message by its id.
+     * @param messageId
+     * @return Message, or null if it does not exist
+     */
+    Message findByMessageId(int messageId);
+
+    /**
+     * Find many messages by id at once.
+     * @param messageIds
+     * @return the messages that exist, in no particular order
+     */
+    List<Message> findAllByMessageIds(List<Integer> messageIds);
+
+    /**
+     * Find every message.
+     * @return List<Message>
+     */
+    List<Message> findAll();
+
+    /**
+     * Find the newest messages. The default reads every message; stores that can sort and limit in the database
+     * override it.
+     * @param limit the most messages to return
+     * @return List<Message>, highest messageId first
+     */
+    default List<Message> findLatest(int limit) {
+        List<Message> messages = new ArrayList<>(findAll());
+        messages.sort(Comparator.comparing(Message::getMessageId).reversed());
+        return messages.size() > limit ? new ArrayList<>(messages.subList(0, limit)) : messages;
+    }
+
+    /**
+     * Counts each account's messages and their time range, for accounts with at least one message. The default
+     * reads every message; stores that can aggregate in the database override it.
+     * @return one summary per postedBy
+     */
+    default List<PostedBySummary> summarizeByPostedBy() {
+        Map<Integer, long[]> byPostedBy = new TreeMap<>();
+        for (Message message : findAll()) {
+            if (message.getPostedBy() == null) {
+                continue;
+            }
+            long[] summary = byPostedBy.computeIfAbsent(message.getPostedBy(),
+                    postedBy -> new long[] {0, Long.MAX_VALUE, Long.MIN_VALUE});
+            summary[0]++;
+            if (message.getTimePostedEpoch() != null) {
+                summary[1] = Math.min(summary[1], message.getTimePostedEpoch());
+                summary[2] = Math.max(summary[2], message.getTimePostedEpoch());
+            }
+        }
+        List<PostedBySummary> result = new ArrayList<>(byPostedBy.size());
+        byPostedBy.forEach((postedBy, summary) -> result.add(new PostedBySummary(postedBy, summary[0],
+                summary[1] <= summary[2] ? summary[1] : null, summary[1] <= summary[2] ? summary[2] : null)));
+        return result;
+    }
+
+    /**
+     * Counts one account's messages and their time range. The default reads the account's messages; stores
+     * that can aggregate in the database override it.
+     * @param postedBy
+     * @return the summary, or null if the account has no messages
+     */
+    default PostedBySummary summarizePostedBy(int postedBy) {
+        List<Message> messages = findAllByPostedBy(postedBy);
+        if (messages.isEmpty()) {
+            return null;
+        }
+        Long first = null;
+        Long last = null;
+        for (Message message : messages) {
+            Long timePostedEpoch = message.getTimePostedEpoch();
+            if (timePostedEpoch != null) {
+                first = first == null ? timePostedEpoch : Math.min(first, timePostedEpoch);
+                last = last == null ? timePostedEpoch : Math.max(last, timePostedEpoch);
+            }
+        }
+        return new PostedBySummary(postedBy, (long) messages.size(), first, last);
+    }
+
+    /**
+     * Find all messages posted by a specific user.
+     * @param postedBy
+     * @return List<Message>
+     */
+    List<Message> findAllByPostedBy(int postedBy);
+
+    /**
+     * Find one page of the messages posted in a time range, oldest first.
+     * @param since the start of the range, inclusive
+     * @param until the end of the range, exclusive
+     * @param page the zero-based page number
+     * @param size the page size
+     * @return List<Message>, ordered by timePostedEpoch, then messageId
+     */
+    List<Message> findPostedBetween(long since, long until, int page, int size);
+
+    /**
+     * Find one page of the messages a specific user posted in a time range, oldest first.
+     * @param postedBy
+     * @param since the start of the range, inclusive
+     * @param until the end of the range, exclusive
+     * @param page the zero-based page number
+     * @param size the page size
+     * @return List<Message>, ordered by timePostedEpoch, then messageId
+     */
+    List<Message> findPostedBetweenByPostedBy(int postedBy, long since, long until, int page, int size);
+
+    /**
+     * Replaces the text of a message.
+     * @param messageId
+     * @param messageText
+     * @return the updated message, or null if it does not exist
+     */
+    Message updateMessageText(int messageId, String messageText);
+
+    /**
+     * Deletes a message.
+     * @param messageId
+     * @return the deleted message, or null if it did not exist
+     */
+    Message deleteByMessageId(int messageId);
+
+    /**
+     * Finds messages posted before a cutoff, lowest messageId first.
+     * @param timePostedEpoch the cutoff, exclusive
+     * @param limit the most messages to return
+     * @return List<Message>
+     */
+    List<Message> findPostedBefore(long timePostedEpoch, int limit);
+
+    /**
+     * Deletes messages in bulk.
+     * @param messageIds
+     * @return the number of messages deleted
+     */
+    int deleteByMessageIds(List<Integer> messageIds);
+}
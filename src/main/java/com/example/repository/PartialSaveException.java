@@ -0,0 +1,27 @@
+package com.example.repository;
+
+import com.example.entity.Message;
+
+import java.util.List;
+
+/**
+ * Thrown by MessageStore.saveAll when a store that cannot save a batch atomically saved some of the messages
+ * before failing. The saved messages are committed and keep their messageIds; the rest were not saved, and
+ * only those should be retried.
+ */
+public class PartialSaveException extends RuntimeException {
+
+    private final List<Message> saved;
+
+    public PartialSaveException(List<Message> saved, Throwable cause) {
+        super(saved.size() + " messages were saved before the batch failed: " + cause.getMessage(), cause);
+        this.saved = saved;
+    }
+
+    /**
+     * @return the messages that were saved, in the order they were given to saveAll
+     */
+    public List<Message> getSaved() {
+        return saved;
+    }
+}
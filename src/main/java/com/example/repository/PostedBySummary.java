@@ -0,0 +1,41 @@
+package com.example.repository;
+
+/**
+ * How many messages one account posted, and the first and last timePostedEpoch among them.
+ */
+public class PostedBySummary {
+
+    private final int postedBy;
+    private final long messageCount;
+    private final Long firstPostedEpoch;
+    private final Long lastPostedEpoch;
+
+    public PostedBySummary(Integer postedBy, Long messageCount, Long firstPostedEpoch, Long lastPostedEpoch) {
+        this.postedBy = postedBy;
+        this.messageCount = messageCount;
+        this.firstPostedEpoch = firstPostedEpoch;
+        this.lastPostedEpoch = lastPostedEpoch;
+    }
+
+    public int getPostedBy() {
+        return postedBy;
+    }
+
+    public long getMessageCount() {
+        return messageCount;
+    }
+
+    /**
+     * @return the earliest timePostedEpoch, or null if no message has one
+     */
+    public Long getFirstPostedEpoch() {
+        return firstPostedEpoch;
+    }
+
+    /**
+     * @return the latest timePostedEpoch, or null if no message has one
+     */
+    public Long getLastPostedEpoch() {
+        return lastPostedEpoch;
+    }
+}
@@ -0,0 +1,394 @@
+package com.example.repository;
+
+import com.example.entity.Message;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.PreDestroy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Spreads the message table over several databases, sharded by a hash of postedBy.
+ *
+ * A messageId encodes its shard: id = localSequence * shardCount + shard. Lookups by id and by postedBy go
+ * to exactly one shard; findAll queries every shard in parallel and merges the results in messageId order.
+ *
+ * saveAll writes each shard's part of a batch in one transaction on that shard, but the shards commit
+ * independently: if a later shard fails, the earlier shards' messages stay saved and are reported in a
+ * PartialSaveException so callers retry only the rest.
+ *
+ * Accounts stay in the application database, so the postedBy foreign key is not enforced on the shards;
+ * MessageService checks the account exists before saving. The sample messages in data.sql are not copied
+ * to the shards.
+ */
+@Repository
+@ConditionalOnProperty(name = "socialmedia.message-store", havingValue = "sharded")
+public class ShardedMessageStore implements MessageStore {
+
+    private static final String[] SCHEMA = {
+            "create table if not exists message (messageId int primary key, postedBy int, "
+                    + "messageText varchar(255), timePostedEpoch bigint)",
+            "create index if not exists message_postedBy_idx on message(postedBy)",
+            "create index if not exists message_time_idx on message(timePostedEpoch)",
+            "create index if not exists message_postedBy_time_idx on message(postedBy, timePostedEpoch)",
+            "create sequence if not exists message_seq start with 1"
+    };
+    private static final int IN_CHUNK = 1000;
+    private static final Comparator<Message> BY_TIME_POSTED =
+            Comparator.comparing(Message::getTimePostedEpoch).thenComparing(Message::getMessageId);
+    private static final String INSERT =
+            "insert into message (messageId, postedBy, messageText, timePostedEpoch) values (?, ?, ?, ?)";
+    private static final String COLUMNS = "select messageId, postedBy, messageText, timePostedEpoch from message";
+    private static final RowMapper<Message> MESSAGE_ROW_MAPPER = (rs, rowNum) -> new Message(
+            rs.getInt("messageId"), rs.getInt("postedBy"), rs.getString("messageText"),
+            rs.getObject("timePostedEpoch", Long.class));
+
+    private final List<HikariDataSource> dataSources = new ArrayList<>();
+    private final List<JdbcTemplate> shards = new ArrayList<>();
+    private final ExecutorService scatterExecutor;
+
+    @Autowired
+    public ShardedMessageStore(@Value("${socialmedia.sharding.urls}") String[] urls,
+                               @Value("${spring.datasource.username:sa}") String username,
+                               @Value("${spring.datasource.password:}") String password,
+                               @Value("${socialmedia.sharding.pool-size:4}") int poolSize) {
+        for (int i = 0; i < urls.length; i++) {
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setPoolName("message-shard-" + i);
+            dataSource.setJdbcUrl(urls[i].trim());
+            dataSource.setUsername(username);
+            dataSource.setPassword(password);
+            dataSource.setMaximumPoolSize(poolSize);
+            JdbcTemplate shard = new JdbcTemplate(dataSource);
+            for (String statement : SCHEMA) {
+                shard.execute(statement);
+            }
+            dataSources.add(dataSource);
+            shards.add(shard);
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.scatterExecutor = Executors.newFixedThreadPool(urls.length, runnable -> {
+            Thread thread = new Thread(runnable, "message-shard-scatter-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        System.out.println("Message store sharded over " + urls.length + " databases.");
+    }
+
+    @PreDestroy
+    public void close() {
+        scatterExecutor.shutdownNow();
+        for (HikariDataSource dataSource : dataSources) {
+            dataSource.close();
+        }
+    }
+
+    /**
+     * @param postedBy
+     * @return the index of the shard holding this user's messages
+     */
+    public int shardForPostedBy(int postedBy) {
+        // Murmur3 finalizer, so consecutive account ids spread over every shard.
+        int h = postedBy;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return Math.floorMod(h, shards.size());
+    }
+
+    /**
+     * @param messageId
+     * @return the index of the shard encoded in the messageId
+     */
+    public int shardForMessageId(int messageId) {
+        return Math.floorMod(messageId, shards.size());
+    }
+
+    @Override
+    public Message save(Message message) {
+        int shard = shardForPostedBy(message.getPostedBy());
+        JdbcTemplate jdbc = shards.get(shard);
+        message.setMessageId(nextMessageId(jdbc, shard));
+        insert(jdbc, message);
+        return message;
+    }
+
+    @Override
+    public List<Message> saveAll(List<Message> messages) {
+        List<List<Message>> byShard = new ArrayList<>();
+        for (int i = 0; i < shards.size(); i++) {
+            byShard.add(new ArrayList<>());
+        }
+        for (Message message : messages) {
+            byShard.get(shardForPostedBy(message.getPostedBy())).add(message);
+        }
+        boolean[] committed = new boolean[shards.size()];
+        for (int i = 0; i < shards.size(); i++) {
+            List<Message> batch = byShard.get(i);
+            if (batch.isEmpty()) {
+                continue;
+            }
+            try {
+                List<Integer> messageIds = nextMessageIds(shards.get(i), i, batch.size());
+                for (int j = 0; j < batch.size(); j++) {
+                    batch.get(j).setMessageId(messageIds.get(j));
+                }
+                insertAll(shards.get(i), batch);
+                committed[i] = true;
+            } catch (RuntimeException e) {
+                List<Message> saved = new ArrayList<>();
+                for (Message message : messages) {
+                    if (committed[shardForPostedBy(message.getPostedBy())]) {
+                        saved.add(message);
+                    } else {
+                        message.setMessageId(null);
+                    }
+                }
+                if (saved.isEmpty()) {
+                    throw e;
+                }
+                throw new PartialSaveException(saved, e);
+            }
+        }
+        return messages;
+    }
+
+    @Override
+    public Message findByMessageId(int messageId) {
+        List<Message> result = shards.get(shardForMessageId(messageId))
+                .query(COLUMNS + " where messageId = ?", MESSAGE_ROW_MAPPER, messageId);
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    @Override
+    public List<Message> findAllByMessageIds(List<Integer> messageIds) {
+        List<List<Integer>> idsByShard = new ArrayList<>();
+        for (int i = 0; i < shards.size(); i++) {
+            idsByShard.add(new ArrayList<>());
+        }
+        for (int messageId : messageIds) {
+            idsByShard.get(shardForMessageId(messageId)).add(messageId);
+        }
+        List<CompletableFuture<List<Message>>> parts = new ArrayList<>();
+        for (int i = 0; i < shards.size(); i++) {
+            JdbcTemplate shard = shards.get(i);
+            List<Integer> ids = idsByShard.get(i);
+            for (int start = 0; start < ids.size(); start += IN_CHUNK) {
+                List<Integer> chunk = ids.subList(start, Math.min(ids.size(), start + IN_CHUNK));
+                String placeholders = String.join(",", Collections.nCopies(chunk.size(), "?"));
+                parts.add(CompletableFuture.supplyAsync(() -> shard.query(
+                        COLUMNS + " where messageId in (" + placeholders + ")", MESSAGE_ROW_MAPPER, chunk.toArray()),
+                        scatterExecutor));
+            }
+        }
+        List<Message> result = new ArrayList<>(messageIds.size());
+        for (CompletableFuture<List<Message>> part : parts) {
+            result.addAll(part.join());
+        }
+        return result;
+    }
+
+    @Override
+    public List<Message> findAll() {
+        List<CompletableFuture<List<Message>>> parts = new ArrayList<>();
+        for (JdbcTemplate shard : shards) {
+            parts.add(CompletableFuture.supplyAsync(() -> shard.query(COLUMNS, MESSAGE_ROW_MAPPER), scatterExecutor));
+        }
+        List<Message> result = new ArrayList<>();
+        for (CompletableFuture<List<Message>> part : parts) {
+            result.addAll(part.join());
+        }
+        result.sort(Comparator.comparing(Message::getMessageId));
+        return result;
+    }
+
+    /**
+     * Every shard returns its own newest limit rows; the newest limit of the merge are the newest overall.
+     */
+    @Override
+    public List<Message> findLatest(int limit) {
+        List<CompletableFuture<List<Message>>> parts = new ArrayList<>();
+        for (JdbcTemplate shard : shards) {
+            parts.add(CompletableFuture.supplyAsync(() -> shard.query(COLUMNS + " order by messageId desc limit ?",
+                    MESSAGE_ROW_MAPPER, limit), scatterExecutor));
+        }
+        List<Message> result = new ArrayList<>();
+        for (CompletableFuture<List<Message>> part : parts) {
+            result.addAll(part.join());
+        }
+        result.sort(Comparator.comparing(Message::getMessageId).reversed());
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    /**
+     * An account's messages all live on one shard, so the shards' summaries are simply concatenated.
+     */
+    @Override
+    public List<PostedBySummary> summarizeByPostedBy() {
+        List<PostedBySummary> result = new ArrayList<>();
+        for (JdbcTemplate shard : shards) {
+            result.addAll(shard.query("select postedBy, count(*), min(timePostedEpoch), max(timePostedEpoch)"
+                            + " from message where postedBy is not null group by postedBy",
+                    (rs, rowNum) -> new PostedBySummary(rs.getInt(1), rs.getLong(2),
+                            rs.getObject(3, Long.class), rs.getObject(4, Long.class))));
+        }
+        return result;
+    }
+
+    @Override
+    public PostedBySummary summarizePostedBy(int postedBy) {
+        List<PostedBySummary> summary = shards.get(shardForPostedBy(postedBy)).query(
+                "select count(*), min(timePostedEpoch), max(timePostedEpoch) from message where postedBy = ?"
+                        + " group by postedBy",
+                (rs, rowNum) -> new PostedBySummary(postedBy, rs.getLong(1),
+                        rs.getObject(2, Long.class), rs.getObject(3, Long.class)), postedBy);
+        return summary.isEmpty() ? null : summary.get(0);
+    }
+
+    @Override
+    public List<Message> findAllByPostedBy(int postedBy) {
+        return shards.get(shardForPostedBy(postedBy))
+                .query(COLUMNS + " where postedBy = ? order by messageId", MESSAGE_ROW_MAPPER, postedBy);
+    }
+
+    @Override
+    public Message updateMessageText(int messageId, String messageText) {
+        JdbcTemplate shard = shards.get(shardForMessageId(messageId));
+        if (shard.update("update message set messageText = ? where messageId = ?", messageText, messageId) == 0) {
+            return null;
+        }
+        return findByMessageId(messageId);
+    }
+
+    @Override
+    public Message deleteByMessageId(int messageId) {
+        Message message = findByMessageId(messageId);
+        if (message == null) {
+            return null;
+        }
+        shards.get(shardForMessageId(messageId)).update("delete from message where messageId = ?", messageId);
+        return message;
+    }
+
+    @Override
+    public List<Message> findPostedBefore(long timePostedEpoch, int limit) {
+        List<Message> result = new ArrayList<>();
+        for (JdbcTemplate shard : shards) {
+            result.addAll(shard.query(COLUMNS + " where timePostedEpoch < ? order by messageId limit ?",
+                    MESSAGE_ROW_MAPPER, timePostedEpoch, limit));
+        }
+        result.sort(Comparator.comparing(Message::getMessageId));
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    @Override
+    public List<Message> findPostedBetween(long since, long until, int page, int size) {
+        // Every shard returns its first (page + 1) * size rows in range; the page is cut from the merge.
+        long perShard = (long) (page + 1) * size;
+        List<CompletableFuture<List<Message>>> parts = new ArrayList<>();
+        for (JdbcTemplate shard : shards) {
+            parts.add(CompletableFuture.supplyAsync(() -> shard.query(
+                    COLUMNS + " where timePostedEpoch >= ? and timePostedEpoch < ? order by timePostedEpoch, messageId limit ?",
+                    MESSAGE_ROW_MAPPER, since, until, perShard), scatterExecutor));
+        }
+        List<Message> result = new ArrayList<>();
+        for (CompletableFuture<List<Message>> part : parts) {
+            result.addAll(part.join());
+        }
+        result.sort(BY_TIME_POSTED);
+        int from = (int) Math.min(result.size(), (long) page * size);
+        return new ArrayList<>(result.subList(from, Math.min(result.size(), from + size)));
+    }
+
+    @Override
+    public List<Message> findPostedBetweenByPostedBy(int postedBy, long since, long until, int page, int size) {
+        return shards.get(shardForPostedBy(postedBy)).query(COLUMNS
+                        + " where postedBy = ? and timePostedEpoch >= ? and timePostedEpoch < ?"
+                        + " order by timePostedEpoch, messageId limit ? offset ?",
+                MESSAGE_ROW_MAPPER, postedBy, since, until, size, (long) page * size);
+    }
+
+    @Override
+    public int deleteByMessageIds(List<Integer> messageIds) {
+        List<List<Object[]>> batches = new ArrayList<>();
+        for (int i = 0; i < shards.size(); i++) {
+            batches.add(new ArrayList<>());
+        }
+        for (int messageId : messageIds) {
+            batches.get(shardForMessageId(messageId)).add(new Object[] {messageId});
+        }
+        int deleted = 0;
+        for (int i = 0; i < shards.size(); i++) {
+            if (!batches.get(i).isEmpty()) {
+                for (int rows : shards.get(i).batchUpdate("delete from message where messageId = ?", batches.get(i))) {
+                    deleted += Math.max(rows, 0);
+                }
+            }
+        }
+        return deleted;
+    }
+
+    private int nextMessageId(JdbcTemplate jdbc, int shard) {
+        Integer local = jdbc.queryForObject("select next value for message_seq", Integer.class);
+        return local * shards.size() + shard;
+    }
+
+    /**
+     * Takes count values from a shard's sequence in one query.
+     */
+    private List<Integer> nextMessageIds(JdbcTemplate jdbc, int shard, int count) {
+        return jdbc.query("select next value for message_seq from system_range(1, ?)",
+                (rs, rowNum) -> rs.getInt(1) * shards.size() + shard, count);
+    }
+
+    private static void insert(JdbcTemplate jdbc, Message message) {
+        jdbc.update(INSERT,
+                message.getMessageId(), message.getPostedBy(), message.getMessageText(), message.getTimePostedEpoch());
+    }
+
+    /**
+     * Inserts one shard's messages as a single JDBC batch in one transaction, so the shard saves all or none.
+     */
+    private static void insertAll(JdbcTemplate jdbc, List<Message> messages) {
+        jdbc.execute((ConnectionCallback<Void>) connection -> {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (PreparedStatement insert = connection.prepareStatement(INSERT)) {
+                for (Message message : messages) {
+                    insert.setInt(1, message.getMessageId());
+                    insert.setInt(2, message.getPostedBy());
+                    insert.setString(3, message.getMessageText());
+                    insert.setObject(4, message.getTimePostedEpoch(), Types.BIGINT);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+            return null;
+        });
+    }
+}
@@ -4,6 +4,7 @@ import com.example.entity.Account;
 import com.example.repository.AccountRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 @Service
 public class AccountService {
@@ -15,39 +16,60 @@ public class AccountService {
         this.accountRepository = accountRepository;
     }
 
+    private static final Result<Void> BLANK_USERNAME = Result.invalid("Username cannot be blank.");
+    private static final Result<Void> SHORT_PASSWORD = Result.invalid("Password is too short.");
+    private static final Result<Account> USERNAME_TAKEN = Result.conflict("Username is already taken.");
+    private static final Result<Account> INVALID_USERNAME = Result.unauthorized("Invalid username.");
+    private static final Result<Account> INVALID_PASSWORD = Result.unauthorized("Invalid password.");
+
     /**
      * Username can't be blank.
      * Password must be at least 4 chars.
      * Username must not already exist.
      * 
      * @param Account
-     * @return Account
-     * @throws IllegalArgumentException if the username is blank or the password is less than 4 characters
-     * @throws IllegalStateException if the username already exists
+     * @return the saved Account; INVALID if the username is blank or the password is less than 4 characters,
+     *         CONFLICT if the username already exists
      */
-    public Account registerAccount(Account account) {
+    @Transactional
+    public Result<Account> registerAccount(Account account) {
         String username = account.getUsername();
         String password = account.getPassword();
         System.out.println(username);
         System.out.println(password);
 
-        if (username.isBlank()) {
-            System.out.println("Username is blank.");
-            throw new IllegalArgumentException("Username cannot be blank.");
-        }
-
-        if (password.length() < 4) {
-            System.out.println("Password is too short.");
-            throw new IllegalArgumentException("Password is too short.");
+        Result<Void> credentials = checkCredentials(username, password);
+        if (!credentials.isOk()) {
+            return credentials.cast();
         }
 
         if (accountRepository.findByUsername(username) != null) {
             System.out.println("Username already exists.");
-            throw new IllegalStateException("Username is already taken.");
+            return USERNAME_TAKEN;
         }
 
         System.out.println("Account created.");
-        return accountRepository.save(account);
+        return Result.ok(accountRepository.save(account));
+    }
+
+    /**
+     * The format rules for a new account: username can't be blank, password must be at least 4 chars.
+     *
+     * @param username
+     * @param password
+     * @return valid, or INVALID if the username is blank or the password is less than 4 characters
+     */
+    public Result<Void> checkCredentials(String username, String password) {
+        if (username == null || username.isBlank()) {
+            System.out.println("Username is blank.");
+            return BLANK_USERNAME;
+        }
+
+        if (password == null || password.length() < 4) {
+            System.out.println("Password is too short.");
+            return SHORT_PASSWORD;
+        }
+        return Result.valid();
     }
 
     /**
@@ -55,10 +77,10 @@ public class AccountService {
      *
      * @param username
      * @param password
-     * @return Account
-     * @throws IllegalArgumentException if the credentials are invalid
+     * @return the Account; UNAUTHORIZED if the credentials are invalid
      */
-    public Account login(String username, String password) {
+    @Transactional
+    public Result<Account> login(String username, String password) {
         System.out.println(username);
         System.out.println(password);
 
@@ -66,14 +88,14 @@ public class AccountService {
 
         if (foundAccount == null) {
             System.out.println("Account was not found.");
-            throw new IllegalArgumentException("Invalid username.");
+            return INVALID_USERNAME;
         }
 
-        if (!password.equals(foundAccount.getPassword())) {
+        if (password == null || !password.equals(foundAccount.getPassword())) {
             System.out.println("Password does not match.");
-            throw new IllegalArgumentException("Invalid password.");
+            return INVALID_PASSWORD;
         }
 
-        return foundAccount;
+        return Result.ok(foundAccount);
     }
-}
\ No newline at end of file
+}
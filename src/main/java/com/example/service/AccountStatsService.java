@@ -0,0 +1,181 @@
+package com.example.service;
+
+import com.example.entity.Message;
+import com.example.event.MessageCreatedEvent;
+import com.example.repository.MessageStore;
+import com.example.repository.PostedBySummary;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Per-account message count and first and last timePostedEpoch, archived messages included, kept in memory.
+ *
+ * The aggregates are seeded at startup from one grouped query on the store and the per-account summaries
+ * kept in each archive segment, so no message is loaded, and then follow every create and delete, so reading
+ * them costs a map lookup however many messages the account has. Deleting an account's first or last message
+ * marks its time range stale; the next read recomputes the range from one aggregate query on the store and
+ * the archive segments' per-account summaries. Updates only change the text and leave the aggregates alone.
+ */
+@Service
+@Lazy(false)
+public class AccountStatsService implements SmartInitializingSingleton {
+
+    private final MessageStore messageStore;
+    private final MessageArchiveService messageArchiveService;
+    private final ConcurrentMap<Integer, Stats> statsByAccount = new ConcurrentHashMap<>();
+
+    @Autowired
+    public AccountStatsService(MessageStore messageStore, MessageArchiveService messageArchiveService) {
+        this.messageStore = messageStore;
+        this.messageArchiveService = messageArchiveService;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        statsByAccount.clear();
+        messageStore.summarizeByPostedBy().forEach(this::added);
+        messageArchiveService.summarizeByPostedBy().forEach(this::added);
+        System.out.println("Account stats built for " + statsByAccount.size() + " accounts.");
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessageCreated(MessageCreatedEvent event) {
+        added(event.getMessage());
+    }
+
+    /**
+     * Takes a deleted message out of its account's aggregates.
+     * @param message
+     */
+    public void removed(Message message) {
+        if (message.getPostedBy() == null) {
+            return;
+        }
+        Stats stats = statsByAccount.get(message.getPostedBy());
+        if (stats != null) {
+            stats.remove(message.getTimePostedEpoch());
+        }
+    }
+
+    /**
+     * @param accountId
+     * @return the account's stats; an account without messages has a count of 0 and no time range
+     */
+    public AccountStats getStats(int accountId) {
+        Stats stats = statsByAccount.get(accountId);
+        if (stats == null) {
+            return new AccountStats(accountId, 0, null, null);
+        }
+        synchronized (stats) {
+            if (stats.stale) {
+                recomputeRange(accountId, stats);
+            }
+            return stats.snapshot(accountId);
+        }
+    }
+
+    private void added(Message message) {
+        if (message.getPostedBy() != null) {
+            statsByAccount.computeIfAbsent(message.getPostedBy(), accountId -> new Stats())
+                    .add(message.getTimePostedEpoch());
+        }
+    }
+
+    private void added(PostedBySummary summary) {
+        statsByAccount.computeIfAbsent(summary.getPostedBy(), accountId -> new Stats()).add(summary);
+    }
+
+    /**
+     * Caller holds the stats lock, so creates and deletes for the account wait; a create that committed before
+     * the read is counted in the range twice, which leaves the range unchanged.
+     */
+    private void recomputeRange(int accountId, Stats stats) {
+        List<PostedBySummary> summaries = new ArrayList<>(messageArchiveService.summarizePostedBy(accountId));
+        PostedBySummary live = messageStore.summarizePostedBy(accountId);
+        if (live != null) {
+            summaries.add(live);
+        }
+        stats.first = Long.MAX_VALUE;
+        stats.last = Long.MIN_VALUE;
+        for (PostedBySummary summary : summaries) {
+            stats.widen(summary.getFirstPostedEpoch());
+            stats.widen(summary.getLastPostedEpoch());
+        }
+        stats.stale = false;
+    }
+
+    private static final class Stats {
+        private long count;
+        private long first = Long.MAX_VALUE;
+        private long last = Long.MIN_VALUE;
+        private boolean stale;
+
+        synchronized void add(Long timePostedEpoch) {
+            count++;
+            widen(timePostedEpoch);
+        }
+
+        synchronized void add(PostedBySummary summary) {
+            count += summary.getMessageCount();
+            widen(summary.getFirstPostedEpoch());
+            widen(summary.getLastPostedEpoch());
+        }
+
+        synchronized void remove(Long timePostedEpoch) {
+            count--;
+            if (timePostedEpoch != null && (timePostedEpoch == first || timePostedEpoch == last)) {
+                stale = true;
+            }
+        }
+
+        void widen(Long timePostedEpoch) {
+            if (timePostedEpoch != null) {
+                first = Math.min(first, timePostedEpoch);
+                last = Math.max(last, timePostedEpoch);
+            }
+        }
+
+        AccountStats snapshot(int accountId) {
+            boolean hasRange = count > 0 && first <= last;
+            return new AccountStats(accountId, count, hasRange ? first : null, hasRange ? last : null);
+        }
+    }
+
+    public static final class AccountStats {
+        private final int accountId;
+        private final long messageCount;
+        private final Long firstPostedEpoch;
+        private final Long lastPostedEpoch;
+
+        public AccountStats(int accountId, long messageCount, Long firstPostedEpoch, Long lastPostedEpoch) {
+            this.accountId = accountId;
+            this.messageCount = messageCount;
+            this.firstPostedEpoch = firstPostedEpoch;
+            this.lastPostedEpoch = lastPostedEpoch;
+        }
+
+        public int getAccountId() {
+            return accountId;
+        }
+
+        public long getMessageCount() {
+            return messageCount;
+        }
+
+        public Long getFirstPostedEpoch() {
+            return firstPostedEpoch;
+        }
+
+        public Long getLastPostedEpoch() {
+            return lastPostedEpoch;
+        }
+    }
+}
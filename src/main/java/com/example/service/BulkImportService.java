@@ -0,0 +1,386 @@
+package com.example.service;
+
+import com.example.entity.Message;
+import com.example.event.MessageCreatedEvent;
+import com.example.repository.MessageStore;
+import com.example.repository.PartialSaveException;
+import com.example.util.CsvReader;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Streams accounts or messages from CSV (with a header row) or NDJSON into the database.
+ *
+ * Rows are read one at a time and checked with the same rules as /register and POST /messages; rejected rows
+ * are reported to the caller with their line number as they are found, and valid rows are written in batches
+ * of batch-size. Memory holds one batch, plus the set of usernames (to reject duplicates without a query per
+ * row) or of account ids (to check postedBy).
+ *
+ * Accounts are inserted with JDBC batches, taking a batch's ids from hibernate_sequence in one query. Messages
+ * go through MessageStore.saveAll so every store backend works, and publish MessageCreatedEvent like other creates.
+ */
+@Service
+public class BulkImportService {
+
+    public enum Format {
+        CSV,
+        NDJSON
+    }
+
+    /**
+     * Receives each rejected row as soon as it is rejected.
+     */
+    public interface RejectHandler {
+        void reject(long line, String reason) throws IOException;
+    }
+
+    private static final String[] ACCOUNT_FIELDS = {"username", "password"};
+    private static final String[] MESSAGE_FIELDS = {"postedBy", "messageText", "timePostedEpoch"};
+
+    private final AccountService accountService;
+    private final MessageService messageService;
+    private final MessageStore messageStore;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+
+    @Autowired
+    public BulkImportService(AccountService accountService, MessageService messageService, MessageStore messageStore,
+                             JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                             ApplicationEventPublisher eventPublisher, ObjectMapper objectMapper,
+                             @Value("${socialmedia.import.batch-size:1000}") int batchSize) {
+        this.accountService = accountService;
+        this.messageService = messageService;
+        this.messageStore = messageStore;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Imports accounts with username and password fields.
+     * @param input
+     * @param format
+     * @param rejects
+     * @return the number of rows imported and rejected
+     * @throws IOException if reading the input or reporting a reject fails
+     */
+    public ImportResult importAccounts(Reader input, Format format, RejectHandler rejects) throws IOException {
+        Set<String> usernames = new HashSet<>(jdbcTemplate.queryForList("select username from account", String.class));
+        ImportResult result = new ImportResult();
+        List<Object[]> batch = new ArrayList<>(batchSize);
+        List<Long> batchLines = new ArrayList<>(batchSize);
+
+        Rows rows = rows(input, format, ACCOUNT_FIELDS);
+        while (rows.next()) {
+            String username = rows.get("username");
+            String password = rows.get("password");
+            try {
+                rows.check();
+                Result<Void> credentials = accountService.checkCredentials(username, password);
+                if (!credentials.isOk()) {
+                    throw new IllegalArgumentException(credentials.getReason());
+                }
+                if (!usernames.add(username)) {
+                    throw new IllegalArgumentException("Username is already taken.");
+                }
+            } catch (IllegalArgumentException e) {
+                reject(result, rejects, rows.line(), e.getMessage());
+                continue;
+            }
+            batch.add(new Object[] {null, username, password});
+            batchLines.add(rows.line());
+            if (batch.size() == batchSize) {
+                insertAccounts(batch, batchLines, result, rejects);
+            }
+        }
+        insertAccounts(batch, batchLines, result, rejects);
+        return result;
+    }
+
+    /**
+     * Imports messages with postedBy, messageText and timePostedEpoch fields.
+     * @param input
+     * @param format
+     * @param rejects
+     * @return the number of rows imported and rejected
+     * @throws IOException if reading the input or reporting a reject fails
+     */
+    public ImportResult importMessages(Reader input, Format format, RejectHandler rejects) throws IOException {
+        Set<Integer> accountIds = new HashSet<>(jdbcTemplate.queryForList("select accountId from account", Integer.class));
+        ImportResult result = new ImportResult();
+        List<Message> batch = new ArrayList<>(batchSize);
+        List<Long> batchLines = new ArrayList<>(batchSize);
+
+        Rows rows = rows(input, format, MESSAGE_FIELDS);
+        while (rows.next()) {
+            Message message;
+            try {
+                rows.check();
+                Integer postedBy = parseInteger(rows.get("postedBy"), "postedBy");
+                Long timePostedEpoch = parseLong(rows.get("timePostedEpoch"), "timePostedEpoch");
+                String messageText = rows.get("messageText");
+                Result<Void> text = messageService.checkMessageText(messageText);
+                if (!text.isOk()) {
+                    throw new IllegalArgumentException(text.getReason());
+                }
+                if (postedBy == null || !accountIds.contains(postedBy)) {
+                    throw new IllegalArgumentException("User ID does not exist.");
+                }
+                message = new Message(postedBy, messageText, timePostedEpoch);
+            } catch (IllegalArgumentException e) {
+                reject(result, rejects, rows.line(), e.getMessage());
+                continue;
+            }
+            batch.add(message);
+            batchLines.add(rows.line());
+            if (batch.size() == batchSize) {
+                saveMessages(batch, batchLines, result, rejects);
+            }
+        }
+        saveMessages(batch, batchLines, result, rejects);
+        return result;
+    }
+
+    private void insertAccounts(List<Object[]> batch, List<Long> lines, ImportResult result, RejectHandler rejects)
+            throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<Integer> ids = jdbcTemplate.queryForList(
+                "select next value for hibernate_sequence from system_range(1, ?)", Integer.class, batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i)[0] = ids.get(i);
+        }
+        String insert = "insert into account (accountId, username, password) values (?, ?, ?)";
+        try {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(insert, batch));
+            result.imported += batch.size();
+        } catch (DataIntegrityViolationException e) {
+            // A username registered meanwhile fails the whole batch; find it row by row.
+            for (int i = 0; i < batch.size(); i++) {
+                try {
+                    jdbcTemplate.update(insert, batch.get(i));
+                    result.imported++;
+                } catch (DataIntegrityViolationException rowFailure) {
+                    reject(result, rejects, lines.get(i), "Username is already taken.");
+                }
+            }
+        }
+        batch.clear();
+        lines.clear();
+    }
+
+    private void saveMessages(List<Message> batch, List<Long> lines, ImportResult result, RejectHandler rejects)
+            throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (Message saved : messageStore.saveAll(batch)) {
+                    eventPublisher.publishEvent(new MessageCreatedEvent(saved));
+                }
+            });
+            result.imported += batch.size();
+        } catch (RuntimeException e) {
+            // A store that cannot save a batch atomically reports what it did save; only the rest is retried.
+            Set<Message> saved = Collections.newSetFromMap(new IdentityHashMap<>());
+            if (e instanceof PartialSaveException) {
+                saved.addAll(((PartialSaveException) e).getSaved());
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                Message message = batch.get(i);
+                if (saved.contains(message)) {
+                    eventPublisher.publishEvent(new MessageCreatedEvent(message));
+                    result.imported++;
+                    continue;
+                }
+                message.setMessageId(null);
+                try {
+                    transactionTemplate.executeWithoutResult(status ->
+                            eventPublisher.publishEvent(new MessageCreatedEvent(messageStore.save(message))));
+                    result.imported++;
+                } catch (RuntimeException rowFailure) {
+                    reject(result, rejects, lines.get(i), "Message could not be saved.");
+                }
+            }
+        }
+        batch.clear();
+        lines.clear();
+    }
+
+    private static void reject(ImportResult result, RejectHandler rejects, long line, String reason) throws IOException {
+        result.rejected++;
+        rejects.reject(line, reason);
+    }
+
+    private static Integer parseInteger(String value, String field) {
+        try {
+            return value == null || value.isEmpty() ? null : Integer.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(field + " is not a number.");
+        }
+    }
+
+    private static Long parseLong(String value, String field) {
+        try {
+            return value == null || value.isEmpty() ? null : Long.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(field + " is not a number.");
+        }
+    }
+
+    private Rows rows(Reader input, Format format, String[] fields) throws IOException {
+        return format == Format.CSV ? new CsvRows(new CsvReader(input), fields) : new JsonRows(input, objectMapper);
+    }
+
+    /**
+     * One row at a time of either input format. check() throws if the current row could not be parsed.
+     */
+    private interface Rows {
+        boolean next() throws IOException;
+
+        long line();
+
+        String get(String field);
+
+        void check();
+    }
+
+    private static final class CsvRows implements Rows {
+        private final CsvReader reader;
+        private final Map<String, Integer> columns = new HashMap<>();
+        private List<String> record;
+
+        private CsvRows(CsvReader reader, String[] fields) throws IOException {
+            this.reader = reader;
+            List<String> header = reader.readRecord();
+            if (header != null) {
+                for (int i = 0; i < header.size(); i++) {
+                    columns.put(header.get(i).trim(), i);
+                }
+            }
+            for (String field : fields) {
+                if (!columns.containsKey(field)) {
+                    throw new IllegalArgumentException("CSV header is missing the " + field + " column.");
+                }
+            }
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            do {
+                record = reader.readRecord();
+            } while (record != null && record.size() == 1 && record.get(0).isBlank());
+            return record != null;
+        }
+
+        @Override
+        public long line() {
+            return reader.getRecordLine();
+        }
+
+        @Override
+        public String get(String field) {
+            Integer column = columns.get(field);
+            return column < record.size() ? record.get(column) : null;
+        }
+
+        @Override
+        public void check() {
+            if (record.size() != columns.size()) {
+                throw new IllegalArgumentException("Expected " + columns.size() + " fields, found " + record.size() + ".");
+            }
+        }
+    }
+
+    private static final class JsonRows implements Rows {
+        private final BufferedReader reader;
+        private final ObjectMapper objectMapper;
+        private long line;
+        private JsonNode row;
+        private String error;
+
+        private JsonRows(Reader reader, ObjectMapper objectMapper) {
+            this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+            this.objectMapper = objectMapper;
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            String text;
+            do {
+                text = reader.readLine();
+                line++;
+            } while (text != null && text.isBlank());
+            if (text == null) {
+                return false;
+            }
+            try {
+                row = objectMapper.readTree(text);
+                error = row.isObject() ? null : "Expected a JSON object.";
+            } catch (JsonProcessingException e) {
+                row = null;
+                error = "Invalid JSON.";
+            }
+            return true;
+        }
+
+        @Override
+        public long line() {
+            return line;
+        }
+
+        @Override
+        public String get(String field) {
+            JsonNode value = row != null ? row.get(field) : null;
+            return value == null || value.isNull() ? null : value.asText();
+        }
+
+        @Override
+        public void check() {
+            if (error != null) {
+                throw new IllegalArgumentException(error);
+            }
+        }
+    }
+
+    public static final class ImportResult {
+        private long imported;
+        private long rejected;
+
+        public long getImported() {
+            return imported;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+@Service
+public class DatabaseBackupService {
+
+    private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String datasourceUrl;
+    private final Path backupDir;
+
+    @Autowired
+    public DatabaseBackupService(JdbcTemplate jdbcTemplate,
+                                 @Value("${spring.datasource.url}") String datasourceUrl,
+                                 @Value("${socialmedia.backup-dir:./data/backups}") String backupDir) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.datasourceUrl = datasourceUrl;
+        this.backupDir = Paths.get(backupDir);
+    }
+
+    /**
+     * Writes an online backup of the database to a new zip file in the backup directory.
+     * H2's BACKUP copies the MVStore file without locking tables, so writers keep running.
+     * @return the path of the backup file
+     * @throws IllegalStateException if the database is in-memory
+     * @throws IOException if the backup directory cannot be created
+     */
+    public Path backup() throws IOException {
+        if (!datasourceUrl.startsWith("jdbc:h2:file:")) {
+            throw new IllegalStateException("Backups need the persistent profile.");
+        }
+
+        Files.createDirectories(backupDir);
+        Path target = backupDir.resolve("socialmedia-" + LocalDateTime.now().format(FILE_TIMESTAMP) + ".zip")
+                .toAbsolutePath();
+        jdbcTemplate.execute("BACKUP TO '" + target.toString().replace("'", "''") + "'");
+        System.out.println("Database backed up to " + target);
+        return target;
+    }
+}
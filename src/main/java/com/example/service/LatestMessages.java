@@ -0,0 +1,193 @@
+package com.example.service;
+
+import com.example.entity.Message;
+import com.example.event.MessageCreatedEvent;
+import com.example.repository.MessageStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.UnaryOperator;
+
+/**
+ * The newest messages, newest first, for GET /messages?latest=N, kept in a lock-free ring of
+ * socialmedia.latest.capacity slots so the feed does not query the database.
+ *
+ * Each create claims the next sequence number from an AtomicLong and publishes an immutable slot holding the
+ * sequence number and a copy of the message; a slot only ever moves to a higher sequence number, so a slow
+ * writer cannot overwrite a newer message after the ring wraps. Updates and deletes swap the slot holding the
+ * message by compare-and-set, a delete leaving an empty slot with the same sequence number. Readers walk back
+ * from the newest sequence number and skip slots that are not yet written or that have been reused.
+ *
+ * The ring is filled from the store at startup and follows every create, update, delete and archive run.
+ * When deletes leave fewer than N messages in a ring that has already dropped older ones, the read falls
+ * back to the store.
+ */
+@Component
+@Lazy(false)
+public class LatestMessages implements SmartInitializingSingleton {
+
+    private final MessageStore messageStore;
+    private final int capacity;
+    private final AtomicReferenceArray<Slot> slots;
+    private final AtomicLong nextSeq = new AtomicLong();
+    private final Counter fallbacks;
+
+    @Autowired
+    public LatestMessages(MessageStore messageStore, MeterRegistry meterRegistry,
+                          @Value("${socialmedia.latest.capacity:1000}") int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("socialmedia.latest.capacity must be positive.");
+        }
+        this.messageStore = messageStore;
+        this.capacity = capacity;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.fallbacks = Counter.builder("messages.latest.fallbacks")
+                .description("Latest-message reads the ring could not serve, answered by the store")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        // One row more than the ring holds tells whether older messages exist, without counting them.
+        List<Message> newest = messageStore.findLatest(capacity + 1);
+        for (int i = 0; i < capacity; i++) {
+            slots.set(i, null);
+        }
+        // A ring that starts out full with older messages behind it starts at sequence 1, so reads know to fall back.
+        boolean dropped = newest.size() > capacity;
+        nextSeq.set(dropped ? 1 : 0);
+        for (int i = Math.min(newest.size(), capacity) - 1; i >= 0; i--) {
+            append(newest.get(i));
+        }
+        System.out.println("Latest messages ring loaded with " + Math.min(newest.size(), capacity) + " messages.");
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessageCreated(MessageCreatedEvent event) {
+        append(event.getMessage());
+    }
+
+    /**
+     * @return the most messages a read can ask for
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @param count how many messages, at most getCapacity()
+     * @return up to count of the newest messages, newest first; shared with other readers and not to be modified
+     */
+    public List<Message> latest(int count) {
+        long end = nextSeq.get();
+        long oldest = Math.max(0, end - capacity);
+        List<Message> result = new ArrayList<>(count);
+        for (long seq = end - 1; seq >= oldest && result.size() < count; seq--) {
+            Slot slot = slots.get(index(seq));
+            if (slot != null && slot.seq == seq && slot.message != null) {
+                result.add(slot.message);
+            }
+        }
+        if (result.size() < count && oldest > 0) {
+            fallbacks.increment();
+            return messageStore.findLatest(count);
+        }
+        return result;
+    }
+
+    /**
+     * Replaces the text of a message if the ring holds it.
+     * @param messageId
+     * @param messageText
+     */
+    public void updateText(int messageId, String messageText) {
+        replace(messageId, message -> copy(message, messageText));
+    }
+
+    /**
+     * Drops a message if the ring holds it.
+     * @param messageId
+     */
+    public void remove(int messageId) {
+        replace(messageId, message -> null);
+    }
+
+    /**
+     * Drops the messages the ring holds out of a batch, e.g. one moved to the archive; one pass over the ring.
+     * @param messageIds
+     */
+    public void removeAll(Collection<Integer> messageIds) {
+        Set<Integer> ids = new HashSet<>(messageIds);
+        for (int i = 0; i < capacity; i++) {
+            Slot slot;
+            do {
+                slot = slots.get(i);
+            } while (slot != null && slot.message != null && ids.contains(slot.message.getMessageId())
+                    && !slots.compareAndSet(i, slot, new Slot(slot.seq, null)));
+        }
+    }
+
+    private void replace(int messageId, UnaryOperator<Message> change) {
+        for (int i = 0; i < capacity; i++) {
+            Slot slot = slots.get(i);
+            while (slot != null && slot.message != null && slot.message.getMessageId() == messageId) {
+                if (slots.compareAndSet(i, slot, new Slot(slot.seq, change.apply(slot.message)))) {
+                    return;
+                }
+                slot = slots.get(i);
+            }
+        }
+    }
+
+    private void append(Message message) {
+        if (message.getMessageId() == null) {
+            return;
+        }
+        long seq = nextSeq.getAndIncrement();
+        Slot slot = new Slot(seq, copy(message, message.getMessageText()));
+        int index = index(seq);
+        while (true) {
+            Slot current = slots.get(index);
+            if (current != null && current.seq >= seq) {
+                return;
+            }
+            if (slots.compareAndSet(index, current, slot)) {
+                return;
+            }
+        }
+    }
+
+    private int index(long seq) {
+        return (int) (seq % capacity);
+    }
+
+    /**
+     * The ring's own copy, so later changes to an entity instance elsewhere do not show through.
+     */
+    private static Message copy(Message message, String messageText) {
+        return new Message(message.getMessageId(), message.getPostedBy(), messageText, message.getTimePostedEpoch());
+    }
+
+    private static final class Slot {
+        private final long seq;
+        private final Message message;
+
+        private Slot(long seq, Message message) {
+            this.seq = seq;
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.example.service;
+
+import com.example.archive.MessageSegment;
+import com.example.entity.Message;
+import com.example.repository.MessageStore;
+import com.example.repository.PostedBySummary;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The archive tier. Messages posted before a cutoff are moved out of the message table into immutable,
+ * compressed segment files under socialmedia.archive.dir; lookups by id and per-user timelines fall back
+ * to the segments. Archived messages are read-only: deleteMessage and updateMessageText only look in the
+ * message table, so an archived message answers as if it did not exist.
+ *
+ * A segment is written as a .seg.pending file and only renamed to .seg once its messages are deleted from the
+ * table. A pending segment left by a crash or a failed delete is completed at startup or by the next run: its
+ * messages still in the table are deleted and it is renamed, so no message is ever in both places for long.
+ *
+ * Disabled unless socialmedia.archive.enabled=true. When enabled, a scheduled run archives messages older
+ * than socialmedia.archive.max-age-days, and POST /admin/archive archives up to a given cutoff.
+ */
+@Service
+public class MessageArchiveService {
+
+    private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String PENDING_SUFFIX = ".pending";
+
+    private final MessageStore messageStore;
+    private final LatestMessages latestMessages;
+    private final boolean enabled;
+    private final Path archiveDir;
+    private final long maxAgeSeconds;
+    private final int segmentMessages;
+    private final int blockMessages;
+    private final List<MessageSegment> segments = new CopyOnWriteArrayList<>();
+
+    @Autowired
+    public MessageArchiveService(MessageStore messageStore, LatestMessages latestMessages,
+                                 @Value("${socialmedia.archive.enabled:false}") boolean enabled,
+                                 @Value("${socialmedia.archive.dir:./data/archive}") String archiveDir,
+                                 @Value("${socialmedia.archive.max-age-days:365}") long maxAgeDays,
+                                 @Value("${socialmedia.archive.segment-messages:100000}") int segmentMessages,
+                                 @Value("${socialmedia.archive.block-messages:64}") int blockMessages) {
+        this.messageStore = messageStore;
+        this.latestMessages = latestMessages;
+        this.enabled = enabled;
+        this.archiveDir = Paths.get(archiveDir);
+        this.maxAgeSeconds = TimeUnit.DAYS.toSeconds(maxAgeDays);
+        this.segmentMessages = segmentMessages;
+        this.blockMessages = blockMessages;
+    }
+
+    @PostConstruct
+    public void openSegments() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(archiveDir);
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(archiveDir, "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        files.sort(Comparator.naturalOrder());
+        for (Path file : files) {
+            segments.add(MessageSegment.open(file));
+        }
+        completePendingSegments();
+        System.out.println("Opened " + segments.size() + " archive segments in " + archiveDir.toAbsolutePath());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param messageId
+     * @return the archived message, or null if it is not archived
+     */
+    public Message findByMessageId(int messageId) {
+        for (MessageSegment segment : segments) {
+            Message message = segment.findByMessageId(messageId);
+            if (message != null) {
+                return message;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param postedBy
+     * @return the archived messages posted by this user, sorted by messageId
+     */
+    public List<Message> findAllByPostedBy(int postedBy) {
+        List<Message> result = new ArrayList<>();
+        for (MessageSegment segment : segments) {
+            result.addAll(segment.findAllByPostedBy(postedBy));
+        }
+        if (segments.size() > 1) {
+            result.sort(Comparator.comparing(Message::getMessageId));
+        }
+        return result;
+    }
+
+    /**
+     * @return each account's archived message count and time range, one summary per account per segment
+     */
+    public List<PostedBySummary> summarizeByPostedBy() {
+        List<PostedBySummary> result = new ArrayList<>();
+        for (MessageSegment segment : segments) {
+            result.addAll(segment.summarizeByPostedBy());
+        }
+        return result;
+    }
+
+    /**
+     * @param postedBy
+     * @return the account's archived message count and time range, one summary per segment holding any
+     */
+    public List<PostedBySummary> summarizePostedBy(int postedBy) {
+        List<PostedBySummary> result = new ArrayList<>();
+        for (MessageSegment segment : segments) {
+            PostedBySummary summary = segment.summarizePostedBy(postedBy);
+            if (summary != null) {
+                result.add(summary);
+            }
+        }
+        return result;
+    }
+
+    @Scheduled(cron = "${socialmedia.archive.cron:0 0 3 * * *}")
+    public void archiveExpired() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            ArchiveRun run = archiveBefore(Instant.now().getEpochSecond() - maxAgeSeconds);
+            System.out.println("Archived " + run.getMessages() + " messages into " + run.getSegments() + " segments.");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Moves every message posted before the cutoff into new segments, segment-messages at a time. Each segment
+     * is on disk and serving reads before its messages are deleted from the table, and is renamed into place
+     * after the delete.
+     * @param timePostedEpoch the cutoff, exclusive
+     * @return what was archived
+     * @throws IllegalStateException if archiving is disabled
+     * @throws IOException if a segment cannot be written
+     */
+    public synchronized ArchiveRun archiveBefore(long timePostedEpoch) throws IOException {
+        if (!enabled) {
+            throw new IllegalStateException("Archiving is disabled.");
+        }
+        completePendingSegments();
+        ArchiveRun run = new ArchiveRun();
+        List<Message> batch;
+        while (!(batch = messageStore.findPostedBefore(timePostedEpoch, segmentMessages)).isEmpty()) {
+            Path file = archiveDir.resolve("messages-" + LocalDateTime.now().format(FILE_TIMESTAMP)
+                    + "-" + run.segments + SEGMENT_SUFFIX + PENDING_SUFFIX);
+            MessageSegment.write(file, batch, blockMessages);
+            MessageSegment segment = MessageSegment.open(file);
+            segments.add(segment);
+            completePending(file, segment);
+
+            run.segments++;
+            run.messages += segment.getMessageCount();
+            run.bytes += segment.getSizeBytes();
+        }
+        return run;
+    }
+
+    /**
+     * Completes the pending segments in the archive directory, opening those not yet serving reads.
+     */
+    private void completePendingSegments() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(archiveDir, "*" + SEGMENT_SUFFIX + PENDING_SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        files.sort(Comparator.naturalOrder());
+        for (Path file : files) {
+            MessageSegment segment = segments.stream()
+                    .filter(open -> open.getPath().equals(file))
+                    .findFirst()
+                    .orElse(null);
+            if (segment == null) {
+                segment = MessageSegment.open(file);
+                segments.add(segment);
+            }
+            System.out.println("Completing pending archive segment " + file.getFileName());
+            completePending(file, segment);
+        }
+    }
+
+    /**
+     * Deletes a pending segment's messages from the table, then renames it into place. Deleting messages that
+     * are already gone is harmless, so this can be repeated after a failure.
+     */
+    private void completePending(Path file, MessageSegment segment) throws IOException {
+        List<Integer> messageIds = new ArrayList<>(segment.getMessageCount());
+        segment.forEach(message -> messageIds.add(message.getMessageId()));
+        messageStore.deleteByMessageIds(messageIds);
+        latestMessages.removeAll(messageIds);
+
+        String name = file.getFileName().toString();
+        Path done = file.resolveSibling(name.substring(0, name.length() - PENDING_SUFFIX.length()));
+        Files.move(file, done, StandardCopyOption.ATOMIC_MOVE);
+        segments.set(segments.indexOf(segment), MessageSegment.open(done));
+    }
+
+    public static final class ArchiveRun {
+        private int segments;
+        private int messages;
+        private long bytes;
+
+        public int getSegments() {
+            return segments;
+        }
+
+        public int getMessages() {
+            return messages;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.service;
+
+import com.example.entity.Message;
+import com.example.event.MessageCreatedEvent;
+import com.example.repository.MessageStore;
+import com.example.repository.PartialSaveException;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optional write-behind path for new messages.
+ *
+ * In ASYNC mode validated messages are put on a bounded queue and a single writer thread saves them in
+ * batches, one transaction per batch, committing once the batch reaches batch-size messages or the first
+ * message has waited linger-millis. Each caller gets a future that completes after its batch commits.
+ * In SYNC mode (the default) nothing is started and createMessage saves each message in its own transaction.
+ */
+@Service
+public class MessageIngestionService {
+
+    public enum Mode {
+        SYNC,
+        ASYNC
+    }
+
+    private final MessageStore messageStore;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final Mode mode;
+    private final int batchSize;
+    private final long lingerNanos;
+    private final BlockingQueue<PendingMessage> queue;
+    private final DistributionSummary batchSizes;
+    private final Timer commitLatency;
+
+    private volatile boolean running;
+    private Thread writer;
+
+    @Autowired
+    public MessageIngestionService(MessageStore messageStore, ApplicationEventPublisher eventPublisher,
+                                   PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+                                   @Value("${socialmedia.ingest.mode:SYNC}") Mode mode,
+                                   @Value("${socialmedia.ingest.queue-capacity:10000}") int queueCapacity,
+                                   @Value("${socialmedia.ingest.batch-size:100}") int batchSize,
+                                   @Value("${socialmedia.ingest.linger-millis:5}") long lingerMillis) {
+        this.messageStore = messageStore;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.mode = mode;
+        this.batchSize = batchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        meterRegistry.gauge("messages.ingest.queue.depth", queue, BlockingQueue::size);
+        this.batchSizes = DistributionSummary.builder("messages.ingest.batch.size")
+                .description("Messages committed per group commit")
+                .register(meterRegistry);
+        this.commitLatency = Timer.builder("messages.ingest.commit.latency")
+                .description("Time to save and commit one batch")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (mode != Mode.ASYNC) {
+            return;
+        }
+        running = true;
+        writer = new Thread(this::writeLoop, "message-ingest-writer");
+        writer.setDaemon(true);
+        writer.start();
+        System.out.println("Message ingestion running in ASYNC mode.");
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    public boolean isAsync() {
+        return mode == Mode.ASYNC;
+    }
+
+    /**
+     * Queues an already validated message for the next group commit.
+     * @param message
+     * @return a future completed with the saved message once its batch commits, or failed with a
+     * RejectedExecutionException if the queue is full
+     */
+    public CompletableFuture<Message> submit(Message message) {
+        PendingMessage pending = new PendingMessage(message);
+        if (!running || !queue.offer(pending)) {
+            pending.result.completeExceptionally(new RejectedExecutionException("Ingestion queue is full."));
+        }
+        return pending.result;
+    }
+
+    private void writeLoop() {
+        List<PendingMessage> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingMessage first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingMessage next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                commit(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void commit(List<PendingMessage> batch) {
+        List<Message> messages = new ArrayList<>(batch.size());
+        for (PendingMessage pending : batch) {
+            messages.add(pending.message);
+        }
+
+        long start = System.nanoTime();
+        try {
+            List<Message> saved = transactionTemplate.execute(status -> {
+                List<Message> result = messageStore.saveAll(messages);
+                for (Message message : result) {
+                    eventPublisher.publishEvent(new MessageCreatedEvent(message));
+                }
+                return result;
+            });
+            commitLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            batchSizes.record(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result.complete(saved.get(i));
+            }
+        } catch (RuntimeException e) {
+            // A store that cannot save a batch atomically reports what it did save; only the rest is retried.
+            Set<Message> saved = Collections.newSetFromMap(new IdentityHashMap<>());
+            if (e instanceof PartialSaveException) {
+                saved.addAll(((PartialSaveException) e).getSaved());
+            }
+            System.out.println("Batch of " + batch.size() + " failed, retrying " + (batch.size() - saved.size())
+                    + " one by one: " + e.getMessage());
+            for (PendingMessage pending : batch) {
+                if (saved.contains(pending.message)) {
+                    eventPublisher.publishEvent(new MessageCreatedEvent(pending.message));
+                    pending.result.complete(pending.message);
+                    continue;
+                }
+                // The failed batch may have assigned an id; saving it again would merge or re-insert under it.
+                pending.message.setMessageId(null);
+                commitOne(pending);
+            }
+            if (!saved.isEmpty()) {
+                batchSizes.record(saved.size());
+            }
+        }
+    }
+
+    private void commitOne(PendingMessage pending) {
+        try {
+            Message saved = transactionTemplate.execute(status -> {
+                Message result = messageStore.save(pending.message);
+                eventPublisher.publishEvent(new MessageCreatedEvent(result));
+                return result;
+            });
+            batchSizes.record(1);
+            pending.result.complete(saved);
+        } catch (RuntimeException e) {
+            pending.result.completeExceptionally(e);
+        }
+    }
+
+    private static final class PendingMessage {
+        private final Message message;
+        private final CompletableFuture<Message> result = new CompletableFuture<>();
+
+        private PendingMessage(Message message) {
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.service;
+
+import com.example.entity.Message;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Holds the encoded JSON bytes of each message, keyed by messageId, so hot reads skip Jackson.
+ *
+ * At most socialmedia.message-json-cache.max-entries encodings are kept. Reads and inserts take no lock: the
+ * entries live in a ConcurrentHashMap and each one remembers when it was last read. When an insert fills the
+ * cache past its size, one thread at a time evicts the least recently read of a few entries, sampled by a
+ * cursor that walks the whole map, so eviction approximates LRU and follows the messages being read now.
+ *
+ * Every entry remembers the field values it was encoded from. A hit is only used when the message being
+ * written still has those values, so a read racing with an update can never serve stale bytes.
+ */
+@Component
+public class MessageJsonCache {
+
+    private static final int EVICTION_SAMPLE = 8;
+
+    private final ObjectMapper objectMapper;
+    private final int maxEntries;
+    private final ConcurrentHashMap<Integer, Entry> entries = new ConcurrentHashMap<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    // Guarded by evictionLock.
+    private Iterator<Map.Entry<Integer, Entry>> evictionCursor;
+
+    @Autowired
+    public MessageJsonCache(ObjectMapper objectMapper,
+                            @Value("${socialmedia.message-json-cache.max-entries:100000}") int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("socialmedia.message-json-cache.max-entries must be positive.");
+        }
+        this.objectMapper = objectMapper;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Returns the JSON encoding of a message, encoding and caching it on a miss.
+     * @param message
+     * @return byte[]
+     * @throws JsonProcessingException if Jackson cannot encode the message
+     */
+    public byte[] bytesFor(Message message) throws JsonProcessingException {
+        Integer messageId = message.getMessageId();
+        if (messageId == null) {
+            return objectMapper.writeValueAsBytes(message);
+        }
+
+        Entry entry = entries.get(messageId);
+        if (entry != null && entry.matches(message)) {
+            entry.lastRead = System.nanoTime();
+            return entry.bytes;
+        }
+
+        byte[] bytes = objectMapper.writeValueAsBytes(message);
+        entries.put(messageId, new Entry(message, bytes));
+        if (entries.size() > maxEntries) {
+            evict();
+        }
+        return bytes;
+    }
+
+    /**
+     * Drops the cached encoding of a message after it is updated or deleted.
+     * @param messageId
+     */
+    public void invalidate(int messageId) {
+        entries.remove(messageId);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Inserts that find another thread evicting leave the work to it.
+     */
+    private void evict() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            while (entries.size() > maxEntries) {
+                Map.Entry<Integer, Entry> oldest = null;
+                for (int i = 0; i < EVICTION_SAMPLE; i++) {
+                    if (evictionCursor == null || !evictionCursor.hasNext()) {
+                        evictionCursor = entries.entrySet().iterator();
+                        if (!evictionCursor.hasNext()) {
+                            return;
+                        }
+                    }
+                    Map.Entry<Integer, Entry> candidate = evictionCursor.next();
+                    if (oldest == null || candidate.getValue().lastRead < oldest.getValue().lastRead) {
+                        oldest = candidate;
+                    }
+                }
+                entries.remove(oldest.getKey(), oldest.getValue());
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private static final class Entry {
+        private final Integer postedBy;
+        private final String messageText;
+        private final Long timePostedEpoch;
+        private final byte[] bytes;
+        private volatile long lastRead = System.nanoTime();
+
+        private Entry(Message message, byte[] bytes) {
+            this.postedBy = message.getPostedBy();
+            this.messageText = message.getMessageText();
+            this.timePostedEpoch = message.getTimePostedEpoch();
+            this.bytes = bytes;
+        }
+
+        private boolean matches(Message message) {
+            return Objects.equals(postedBy, message.getPostedBy())
+                    && Objects.equals(timePostedEpoch, message.getTimePostedEpoch())
+                    && Objects.equals(messageText, message.getMessageText());
+        }
+    }
+}
@@ -1,131 +1,470 @@
 package com.example.service;
 
 import com.example.entity.Message;
-import com.example.repository.MessageRepository;
+import com.example.event.MessageCreatedEvent;
 import com.example.repository.AccountRepository;
+import com.example.repository.MessageStore;
+import com.example.replica.ReadYourWritesTracker;
+import com.example.util.SingleFlight;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class MessageService {
 
-    private final MessageRepository messageRepository;
+    private static final int MAX_BATCH_IDS = 500;
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int UPDATE_LOCK_STRIPES = 64;
+
+    private static final Result<Void> BLANK_TEXT = Result.invalid("Message cannot be blank.");
+    private static final Result<Void> LONG_TEXT = Result.invalid("Message cannot exceed 255 characters.");
+    private static final Result<Void> UNKNOWN_USER = Result.invalid("User ID does not exist.");
+    private static final Result<Integer> UNKNOWN_MESSAGE = Result.invalid("Message does not exist.");
+
+    private final MessageStore messageStore;
     private final AccountRepository accountRepository;
+    private final MessageJsonCache messageJsonCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MessageIngestionService messageIngestionService;
+    private final ReadYourWritesTracker readYourWrites;
+    private final MessageArchiveService messageArchiveService;
+    private final OffHeapMessageCache offHeapMessageCache;
+    private final AccountStatsService accountStatsService;
+    private final LatestMessages latestMessages;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean optimisticCreate;
+    // Concurrent store reads of one message or one user's messages share a single query.
+    private final SingleFlight<Integer, Message> messageLoads = new SingleFlight<>();
+    private final SingleFlight<Integer, List<Message>> timelineLoads = new SingleFlight<>();
+    // Updates of one message hold its stripe from the store write through the cache writes, so the caches
+    // end up with the text that committed last.
+    private final Object[] updateLocks = new Object[UPDATE_LOCK_STRIPES];
 
     @Autowired
-    public MessageService(MessageRepository messageRepository, AccountRepository accountRepository) {
-        this.messageRepository = messageRepository;
+    public MessageService(MessageStore messageStore, AccountRepository accountRepository,
+                          MessageJsonCache messageJsonCache, ApplicationEventPublisher eventPublisher,
+                          MessageIngestionService messageIngestionService, ReadYourWritesTracker readYourWrites,
+                          MessageArchiveService messageArchiveService, OffHeapMessageCache offHeapMessageCache,
+                          AccountStatsService accountStatsService, LatestMessages latestMessages,
+                          MeterRegistry meterRegistry,
+                          PlatformTransactionManager transactionManager,
+                          @Value("${socialmedia.messages.optimistic-create:false}") boolean optimisticCreate) {
+        this.messageStore = messageStore;
         this.accountRepository = accountRepository;
+        this.messageJsonCache = messageJsonCache;
+        this.eventPublisher = eventPublisher;
+        this.messageIngestionService = messageIngestionService;
+        this.readYourWrites = readYourWrites;
+        this.messageArchiveService = messageArchiveService;
+        this.offHeapMessageCache = offHeapMessageCache;
+        this.accountStatsService = accountStatsService;
+        this.latestMessages = latestMessages;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.optimisticCreate = optimisticCreate;
+        for (int i = 0; i < updateLocks.length; i++) {
+            updateLocks[i] = new Object();
+        }
+
+        registerLoadCounters(meterRegistry, "findByMessageId", messageLoads);
+        registerLoadCounters(meterRegistry, "findAllByPostedBy", timelineLoads);
+    }
+
+    private static void registerLoadCounters(MeterRegistry meterRegistry, String query, SingleFlight<?, ?> loads) {
+        FunctionCounter.builder("messages.lookups.loaded", loads, SingleFlight::loadCount)
+                .description("Store queries run for message lookups")
+                .tag("query", query)
+                .register(meterRegistry);
+        FunctionCounter.builder("messages.lookups.coalesced", loads, SingleFlight::coalescedCount)
+                .description("Message lookups that shared a query already in flight")
+                .tag("query", query)
+                .register(meterRegistry);
+    }
+
+    /**
+     * A new message changes its author's timeline; readers after the commit must not join a query from before it.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessageCreated(MessageCreatedEvent event) {
+        if (event.getMessage().getPostedBy() != null) {
+            timelineLoads.forget(event.getMessage().getPostedBy());
+        }
     }
 
     /**
      * Creates a new message.
+     *
+     * By default the account is looked up and the message saved in one transaction. With
+     * socialmedia.messages.optimistic-create the store checks postedBy itself, with no transaction around the
+     * save: the JPA store inserts straight away and a foreign key violation means the account does not exist,
+     * one insert and one commit and no window between the check and the insert; stores without the foreign key
+     * look the account up first.
      * @param Message
-     * @return Message
-     * @throws IllegalArgumentException if messageText is blank, too long, or postedBy is null
+     * @return the saved Message; INVALID if messageText is blank or too long, or postedBy is not an account
      */
-    public Message createMessage(Message message) {
-        String messageText = message.getMessageText();
+    public Result<Message> createMessage(Message message) {
+        // Checked before any transaction, so invalid text takes no connection.
+        Result<Void> text = checkMessageText(message.getMessageText());
+        if (!text.isOk()) {
+            return text.cast();
+        }
+        if (!optimisticCreate) {
+            return transactionTemplate.execute(status -> {
+                Result<Void> known = checkPostedBy(message);
+                return known.isOk() ? Result.ok(saved(messageStore.save(message))) : known.cast();
+            });
+        }
 
-        if (messageText.isEmpty()) {
-            System.out.println("Message is empty.");
-            throw new IllegalArgumentException("Message cannot be blank.");
+        if (message.getPostedBy() == null) {
+            // A null postedBy passes the foreign key.
+            return UNKNOWN_USER.cast();
         }
+        Message savedMessage = messageStore.saveCheckingPostedBy(message,
+                postedBy -> accountRepository.findByAccountId(postedBy) != null);
+        if (savedMessage == null) {
+            System.out.println("Not a valid user.");
+            return UNKNOWN_USER.cast();
+        }
+        return Result.ok(saved(savedMessage));
+    }
 
-        if (messageText.length() > 255) {
-            System.out.println("Message is too long.");
-            throw new IllegalArgumentException("Message cannot exceed 255 characters.");
+    /**
+     * Publishes a saved message; listeners run once the transaction, if there is one, commits.
+     */
+    private Message saved(Message savedMessage) {
+        readYourWrites.recordWrite(savedMessage.getPostedBy());
+        eventPublisher.publishEvent(new MessageCreatedEvent(savedMessage));
+        return savedMessage;
+    }
+
+    /**
+     * Validates a new message and hands it to the write-behind queue instead of saving it right away.
+     * @param Message
+     * @return a future completed with the saved message once its batch commits; INVALID if messageText is
+     *         blank or too long, or postedBy is not an account
+     */
+    @Transactional
+    public Result<CompletableFuture<Message>> submitMessage(Message message) {
+        Result<Void> valid = checkNewMessage(message);
+        if (!valid.isOk()) {
+            return valid.cast();
         }
-        
-        int postedBy = message.getPostedBy();
+        return Result.ok(messageIngestionService.submit(message).thenApply(savedMessage -> {
+            readYourWrites.recordWrite(savedMessage.getPostedBy());
+            return savedMessage;
+        }));
+    }
+
+    /**
+     * @return true if new messages go through the write-behind queue
+     */
+    public boolean isWriteBehind() {
+        return messageIngestionService.isAsync();
+    }
+
+    private Result<Void> checkNewMessage(Message message) {
+        Result<Void> text = checkMessageText(message.getMessageText());
+        return text.isOk() ? checkPostedBy(message) : text;
+    }
+
+    private Result<Void> checkPostedBy(Message message) {
+        Integer postedBy = message.getPostedBy();
         System.out.println("Account ID: " + postedBy);
 
-        if (accountRepository.findByAccountId(postedBy) == null) {
+        if (postedBy == null || accountRepository.findByAccountId(postedBy) == null) {
             System.out.println("Not a valid user.");
-            throw new IllegalArgumentException("User ID does not exist.");
+            return UNKNOWN_USER;
+        }
+        return Result.valid();
+    }
+
+    /**
+     * The text rules for a new or updated message.
+     * @param messageText
+     * @return valid, or INVALID if messageText is blank or too long
+     */
+    public Result<Void> checkMessageText(String messageText) {
+        if (messageText == null || messageText.isEmpty()) {
+            System.out.println("Message is empty.");
+            return BLANK_TEXT;
         }
 
-        return messageRepository.save(message);
+        if (messageText.length() > 255) {
+            System.out.println("Message is too long.");
+            return LONG_TEXT;
+        }
+        return Result.valid();
     }
 
     /**
      * Retrieves all messages.
+     * @param readerId the account reading, or null; if it wrote recently the read goes to the primary
      * @return a list of all messages
      */
-    public List<Message> getAllMessages() {
+    public List<Message> getAllMessages(Integer readerId) {
         System.out.println("Messages retrieved.");
-        return messageRepository.findAll();
+        return readYourWrites.read(readerId, messageStore::findAll);
     }
 
     /**
-     * Retrieves a message by its ID.
+     * Retrieves the newest messages from memory, without reading the store.
+     * @param count how many messages
+     * @return up to count messages, newest first
+     * @throws IllegalArgumentException if count is not between 1 and socialmedia.latest.capacity
+     */
+    public List<Message> getLatestMessages(int count) {
+        if (count < 1 || count > latestMessages.getCapacity()) {
+            throw new IllegalArgumentException("Latest count must be between 1 and " + latestMessages.getCapacity() + ".");
+        }
+        return latestMessages.latest(count);
+    }
+
+    /**
+     * Retrieves a message by its ID, from the archive if it is no longer in the message table. Concurrent
+     * lookups of the same ID share one store query, except for a reader that wrote recently, whose read goes
+     * to the primary on its own.
      * @param messageId
+     * @param readerId the account reading, or null; if it wrote recently the read goes to the primary
      * @return Message
      */
-    public Message getMessageById(int messageId) {
+    public Message getMessageById(int messageId, Integer readerId) {
         System.out.println("Message retrieved.");
-        return messageRepository.findByMessageId(messageId);
+        Message message = readYourWrites.isRecentWriter(readerId)
+                ? readYourWrites.read(readerId, () -> messageStore.findByMessageId(messageId))
+                : messageLoads.load(messageId, () -> messageStore.findByMessageId(messageId));
+        return message != null ? message : messageArchiveService.findByMessageId(messageId);
     }
 
     /**
-     * Deletes a message by its ID.
+     * Retrieves one page of the messages posted in a time range, oldest first. Archived messages are not included.
+     * @param since the start of the range, inclusive, or null for no lower bound
+     * @param until the end of the range, exclusive, or null for no upper bound
+     * @param page the zero-based page number, or null for the first page
+     * @param size the page size, or null for 100
+     * @param readerId the account reading, or null; if it wrote recently the read goes to the primary
+     * @return List<Message>, ordered by timePostedEpoch, then messageId
+     * @throws IllegalArgumentException if page is negative, or size is not between 1 and 1000
+     */
+    public List<Message> getMessagesPostedBetween(Long since, Long until, Integer page, Integer size, Integer readerId) {
+        int pageNumber = pageNumber(page);
+        int pageSize = pageSize(size);
+        return readYourWrites.read(readerId, () -> messageStore.findPostedBetween(
+                since != null ? since : Long.MIN_VALUE, until != null ? until : Long.MAX_VALUE, pageNumber, pageSize));
+    }
+
+    /**
+     * Retrieves one page of the messages a specific user posted in a time range, oldest first. Archived messages
+     * are not included.
+     * @param postedBy
+     * @param since the start of the range, inclusive, or null for no lower bound
+     * @param until the end of the range, exclusive, or null for no upper bound
+     * @param page the zero-based page number, or null for the first page
+     * @param size the page size, or null for 100
+     * @return List<Message>, ordered by timePostedEpoch, then messageId
+     * @throws IllegalArgumentException if page is negative, or size is not between 1 and 1000
+     */
+    public List<Message> getMessagesByUserIdPostedBetween(int postedBy, Long since, Long until, Integer page, Integer size) {
+        int pageNumber = pageNumber(page);
+        int pageSize = pageSize(size);
+        return readYourWrites.read(postedBy, () -> messageStore.findPostedBetweenByPostedBy(postedBy,
+                since != null ? since : Long.MIN_VALUE, until != null ? until : Long.MAX_VALUE, pageNumber, pageSize));
+    }
+
+    private static int pageNumber(Integer page) {
+        if (page != null && page < 0) {
+            throw new IllegalArgumentException("Page cannot be negative.");
+        }
+        return page != null ? page : 0;
+    }
+
+    private static int pageSize(Integer size) {
+        if (size != null && (size < 1 || size > MAX_PAGE_SIZE)) {
+            throw new IllegalArgumentException("Page size must be between 1 and " + MAX_PAGE_SIZE + ".");
+        }
+        return size != null ? size : DEFAULT_PAGE_SIZE;
+    }
+
+    /**
+     * Retrieves many messages by ID: from the off-heap cache where it holds them, then from the store in
+     * chunked IN queries, then from the archive.
+     * @param messageIds the IDs in the order the caller wants them back; duplicates are allowed
+     * @param readerId the account reading, or null; if it wrote recently the read goes to the primary
+     * @return the found messages in request order, and the IDs that do not exist
+     * @throws IllegalArgumentException if more than 500 IDs are requested, or one is empty
+     */
+    public MessageBatch getMessagesByIds(List<Integer> messageIds, Integer readerId) {
+        if (messageIds.size() > MAX_BATCH_IDS) {
+            throw new IllegalArgumentException("At most " + MAX_BATCH_IDS + " message IDs per request.");
+        }
+        if (messageIds.contains(null)) {
+            throw new IllegalArgumentException("Message IDs cannot be empty.");
+        }
+        Map<Integer, Message> found = new HashMap<>();
+        List<Integer> uncached = new ArrayList<>();
+        for (Integer messageId : new LinkedHashSet<>(messageIds)) {
+            Message cached = offHeapMessageCache.get(messageId);
+            if (cached != null) {
+                found.put(messageId, cached);
+            } else {
+                uncached.add(messageId);
+            }
+        }
+        if (!uncached.isEmpty()) {
+            for (Message message : readYourWrites.read(readerId, () -> messageStore.findAllByMessageIds(uncached))) {
+                found.put(message.getMessageId(), message);
+            }
+        }
+        if (messageArchiveService.isEnabled()) {
+            for (Integer messageId : uncached) {
+                if (!found.containsKey(messageId)) {
+                    Message archived = messageArchiveService.findByMessageId(messageId);
+                    if (archived != null) {
+                        found.put(messageId, archived);
+                    }
+                }
+            }
+        }
+
+        List<Message> messages = new ArrayList<>(messageIds.size());
+        List<Integer> missingIds = new ArrayList<>();
+        for (Integer messageId : messageIds) {
+            Message message = found.get(messageId);
+            if (message != null) {
+                messages.add(message);
+            } else {
+                missingIds.add(messageId);
+            }
+        }
+        return new MessageBatch(messages, missingIds);
+    }
+
+    /**
+     * Looks a message up in the off-heap cache, which is kept current on the primary and so needs no routing.
+     * @param messageId
+     * @return a view that is serialized straight from off-heap memory, or null if the message is not cached
+     */
+    public OffHeapMessageCache.MessageView getCachedMessageById(int messageId) {
+        return offHeapMessageCache.find(messageId);
+    }
+
+    /**
+     * Deletes a message by its ID. Archived messages are read-only and count as not found.
      * @param messageId
      * @return 1 if deleted, 0 if not found
      */
     public Integer deleteMessage(int messageId) {
-        Message message = messageRepository.findByMessageId(messageId);
-
-        if (message == null) {
+        Message deletedMessage = messageStore.deleteByMessageId(messageId);
+        if (deletedMessage == null) {
             System.out.println("No message to delete.");
             return null;
         }
 
-        messageRepository.deleteById(messageId);
+        readYourWrites.recordWrite(deletedMessage.getPostedBy());
+        forgetLoads(messageId, deletedMessage.getPostedBy());
+        messageJsonCache.invalidate(messageId);
+        offHeapMessageCache.remove(messageId);
+        latestMessages.remove(messageId);
+        accountStatsService.removed(deletedMessage);
         System.out.println("Message deleted.");
         return 1;
     }
 
     /**
-     * Updates the text of a message.
+     * Updates the text of a message. Archived messages are read-only and count as not found.
      * @param messageId
      * @param messageText
-     * @return 1 if updated, 0 if not found or invalid input
-     * @throws IllegalArgumentException if the new messageText is blank or too long
+     * @return 1 if updated; INVALID if the new messageText is blank or too long, or the message does not exist
      */
-    public int updateMessageText(int messageId, Message message) {
+    public Result<Integer> updateMessageText(int messageId, Message message) {
         String messageText = message.getMessageText();
-        System.out.println("New message text: " + messageText);
-
-        if (messageText.isEmpty()) {
-            System.out.println("Message is empty.");
-            throw new IllegalArgumentException("Message cannot be blank.");
+        Result<Void> valid = checkMessageText(messageText);
+        if (!valid.isOk()) {
+            return valid.cast();
         }
 
-        if (messageText.length() > 255) {
-            System.out.println("Message is too long.");
-            throw new IllegalArgumentException("Message cannot exceed 255 characters.");
-        }
-
-        Message oldMessage = messageRepository.findByMessageId(messageId);
-        if (oldMessage == null) {
-            System.out.println("No message to update.");
-            throw new IllegalArgumentException("Message does not exist.");
+        Message updatedMessage;
+        synchronized (updateLocks[Math.floorMod(messageId, updateLocks.length)]) {
+            updatedMessage = messageStore.updateMessageText(messageId, messageText);
+            if (updatedMessage == null) {
+                System.out.println("No message to update.");
+                return UNKNOWN_MESSAGE;
+            }
+            offHeapMessageCache.updateText(messageId, messageText);
+            latestMessages.updateText(messageId, messageText);
         }
 
-        oldMessage.setMessageText(messageText);
-        messageRepository.save(oldMessage);
+        readYourWrites.recordWrite(updatedMessage.getPostedBy());
+        forgetLoads(messageId, updatedMessage.getPostedBy());
+        messageJsonCache.invalidate(messageId);
         System.out.println("Message updated.");
-        return 1;
+        return Result.ok(1);
+    }
+
+    private void forgetLoads(int messageId, Integer postedBy) {
+        messageLoads.forget(messageId);
+        if (postedBy != null) {
+            timelineLoads.forget(postedBy);
+        }
     }
 
     /**
-     * Retrieves all messages posted by a specific user.
+     * Retrieves all messages posted by a specific user, archived ones included. Served from the off-heap
+     * cache while it holds every message and the user has none in the archive; otherwise concurrent reads of
+     * the same user's messages share one store query, unless the user wrote recently.
      * @param postedBy
-     * @return List<Message>
+     * @return List<Message>, shared with concurrent callers and not to be modified
      */
     public List<Message> getMessagesByUserId(int postedBy) {
-        return messageRepository.findAllByPostedBy(postedBy);
+        List<Message> archived = messageArchiveService.findAllByPostedBy(postedBy);
+        if (archived.isEmpty()) {
+            List<Message> cached = offHeapMessageCache.timeline(postedBy);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        List<Message> messages = readYourWrites.isRecentWriter(postedBy)
+                ? readYourWrites.read(postedBy, () -> messageStore.findAllByPostedBy(postedBy))
+                : timelineLoads.load(postedBy, () -> messageStore.findAllByPostedBy(postedBy));
+        if (archived.isEmpty()) {
+            return messages;
+        }
+        List<Message> merged = new ArrayList<>(archived);
+        merged.addAll(messages);
+        merged.sort(Comparator.comparing(Message::getMessageId));
+        return merged;
+    }
+
+    public static final class MessageBatch {
+        private final List<Message> messages;
+        private final List<Integer> missingIds;
+
+        public MessageBatch(List<Message> messages, List<Integer> missingIds) {
+            this.messages = messages;
+            this.missingIds = missingIds;
+        }
+
+        public List<Message> getMessages() {
+            return messages;
+        }
+
+        public List<Integer> getMissingIds() {
+            return missingIds;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,242 @@
+package com.example.service;
+
+import com.example.entity.Message;
+import com.example.event.MessageCreatedEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pushes newly created messages to Server-Sent Events subscribers.
+ *
+ * Publishing only offers the message to each subscriber's bounded buffer; a small pool of sender threads
+ * does the socket writes. A subscriber whose buffer is full either loses its oldest buffered message or is
+ * disconnected, depending on the overflow policy, so a slow consumer never holds up createMessage.
+ *
+ * A send to a client that stopped reading blocks its sender thread until the servlet container's write
+ * timeout fails it, and nothing can interrupt it sooner. A watchdog therefore disconnects any subscriber whose
+ * send has run longer than socialmedia.stream.send-timeout-millis and adds a sender thread for as long as that
+ * send stays blocked, so stalled clients cannot take every sender from the others. The pool grows to at most
+ * socialmedia.stream.max-sender-threads; past that many stalled clients at once, other subscribers wait until
+ * the container times the stalled writes out.
+ */
+@Service
+public class MessageStreamService {
+
+    public enum OverflowPolicy {
+        DROP_OLDEST,
+        DISCONNECT
+    }
+
+    private final int bufferSize;
+    private final long timeoutMillis;
+    private final OverflowPolicy overflowPolicy;
+    private final long sendTimeoutNanos;
+    private final int maxSenderThreads;
+    private final CopyOnWriteArrayList<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final Set<Subscriber> sending = ConcurrentHashMap.newKeySet();
+    private final ThreadPoolExecutor senders;
+
+    @Autowired
+    public MessageStreamService(@Value("${socialmedia.stream.buffer-size:256}") int bufferSize,
+                                @Value("${socialmedia.stream.timeout-millis:1800000}") long timeoutMillis,
+                                @Value("${socialmedia.stream.overflow-policy:DROP_OLDEST}") OverflowPolicy overflowPolicy,
+                                @Value("${socialmedia.stream.sender-threads:2}") int senderThreads,
+                                @Value("${socialmedia.stream.send-timeout-millis:10000}") long sendTimeoutMillis,
+                                @Value("${socialmedia.stream.max-sender-threads:8}") int maxSenderThreads) {
+        this.bufferSize = bufferSize;
+        this.timeoutMillis = timeoutMillis;
+        this.overflowPolicy = overflowPolicy;
+        this.sendTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(sendTimeoutMillis);
+        this.maxSenderThreads = Math.max(senderThreads, maxSenderThreads);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.senders = (ThreadPoolExecutor) Executors.newFixedThreadPool(senderThreads, runnable -> {
+            Thread thread = new Thread(runnable, "message-stream-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Opens a stream of newly created messages.
+     * @param postedBy only stream messages from this account, or every message when null
+     * @return SseEmitter
+     */
+    public SseEmitter subscribe(Integer postedBy) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscriber subscriber = new Subscriber(emitter, postedBy, bufferSize);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+
+        try {
+            // Commits the response headers so the client knows the stream is open before any message arrives.
+            emitter.send(SseEmitter.event().comment("subscribed"));
+        } catch (IOException e) {
+            subscribers.remove(subscriber);
+            emitter.completeWithError(e);
+        }
+        return emitter;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessageCreated(MessageCreatedEvent event) {
+        Message message = event.getMessage();
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.postedBy != null && !subscriber.postedBy.equals(message.getPostedBy())) {
+                continue;
+            }
+            if (!subscriber.buffer.offer(message)) {
+                if (overflowPolicy == OverflowPolicy.DISCONNECT) {
+                    System.out.println("Stream subscriber too slow, disconnecting.");
+                    disconnect(subscriber);
+                    continue;
+                }
+                subscriber.buffer.poll();
+                subscriber.buffer.offer(message);
+            }
+            schedule(subscriber);
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * Disconnects subscribers whose send has been blocked longer than the send timeout, and adds a sender
+     * thread for each, up to the maximum, until its send returns.
+     */
+    @Scheduled(fixedDelayString = "${socialmedia.stream.watchdog-millis:1000}")
+    public void disconnectStuckSubscribers() {
+        long now = System.nanoTime();
+        for (Subscriber subscriber : sending) {
+            if (subscriber.stuck || now - subscriber.sendStarted < sendTimeoutNanos) {
+                continue;
+            }
+            System.out.println("Stream subscriber send blocked, disconnecting.");
+            subscriber.stuck = true;
+            disconnect(subscriber);
+            synchronized (senders) {
+                if (senders.getMaximumPoolSize() < maxSenderThreads) {
+                    senders.setMaximumPoolSize(senders.getMaximumPoolSize() + 1);
+                    senders.setCorePoolSize(senders.getCorePoolSize() + 1);
+                    subscriber.extraSender = true;
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        senders.shutdownNow();
+        for (Subscriber subscriber : subscribers) {
+            complete(subscriber);
+        }
+        subscribers.clear();
+    }
+
+    private void schedule(Subscriber subscriber) {
+        if (subscriber.scheduled.compareAndSet(false, true)) {
+            senders.execute(() -> drain(subscriber));
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        Message message;
+        while (!subscriber.closed && (message = subscriber.buffer.poll()) != null) {
+            subscriber.sendStarted = System.nanoTime();
+            sending.add(subscriber);
+            try {
+                subscriber.emitter.send(SseEmitter.event()
+                        .id(String.valueOf(message.getMessageId()))
+                        .name("message")
+                        .data(message, MediaType.APPLICATION_JSON));
+            } catch (IOException | IllegalStateException e) {
+                subscribers.remove(subscriber);
+                subscriber.closed = true;
+            } finally {
+                sending.remove(subscriber);
+                releaseExtraSender(subscriber);
+            }
+        }
+        if (subscriber.closed) {
+            // Left scheduled, so a closed subscriber is never drained again.
+            subscriber.buffer.clear();
+            complete(subscriber);
+            return;
+        }
+        subscriber.scheduled.set(false);
+        // A message may have been offered, or the subscriber closed, after the last poll but before the flag was cleared.
+        if (!subscriber.buffer.isEmpty() || subscriber.closed) {
+            schedule(subscriber);
+        }
+    }
+
+    /**
+     * Completing the emitter waits for a send in progress, which for a stalled subscriber can take until the
+     * socket times out; so the publisher only marks the subscriber closed and its sender thread completes it.
+     */
+    private void disconnect(Subscriber subscriber) {
+        subscribers.remove(subscriber);
+        subscriber.closed = true;
+        subscriber.buffer.clear();
+        schedule(subscriber);
+    }
+
+    private void releaseExtraSender(Subscriber subscriber) {
+        synchronized (senders) {
+            if (subscriber.extraSender) {
+                subscriber.extraSender = false;
+                senders.setCorePoolSize(senders.getCorePoolSize() - 1);
+                senders.setMaximumPoolSize(senders.getMaximumPoolSize() - 1);
+            }
+        }
+    }
+
+    /**
+     * Completing fails when the client is already gone; the stream is over either way.
+     */
+    private static void complete(Subscriber subscriber) {
+        try {
+            subscriber.emitter.complete();
+        } catch (RuntimeException e) {
+            // Nothing left to close.
+        }
+    }
+
+    private static final class Subscriber {
+        private final SseEmitter emitter;
+        private final Integer postedBy;
+        private final ArrayBlockingQueue<Message> buffer;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean closed;
+        private volatile long sendStarted;
+        private volatile boolean stuck;
+        // Guarded by the senders lock.
+        private boolean extraSender;
+
+        private Subscriber(SseEmitter emitter, Integer postedBy, int bufferSize) {
+            this.emitter = emitter;
+            this.postedBy = postedBy;
+            this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        }
+    }
+}
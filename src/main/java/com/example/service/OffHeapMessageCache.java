@@ -0,0 +1,554 @@
+package com.example.service;
+
+import com.example.entity.Message;
+import com.example.event.MessageCreatedEvent;
+import com.example.repository.MessageStore;
+import com.example.util.IntLongHashMap;
+import com.fasterxml.jackson.annotation.JsonValue;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Recent messages kept outside the Java heap, so caching millions of them adds no objects for the collector.
+ *
+ * Each message is a fixed 48-byte record in a direct ByteBuffer ring (sequence number, messageId, postedBy,
+ * timePostedEpoch, text position and length, flags, and the sequence number of the same user's previous message).
+ * The text is stored once, already escaped as a JSON string, in a second direct buffer used as a FIFO slab.
+ * IntLongHashMaps on primitive arrays map messageId to record and postedBy to the user's newest record.
+ *
+ * Reads allocate no per-message objects: a lookup returns a view holding record sequence numbers, and the JSON
+ * converter copies each message's JSON from off-heap memory through a reused per-thread buffer. Other formats
+ * turn the view into Message objects while serializing.
+ *
+ * The cache loads every message at startup and follows creates, updates and deletes. It serves timelines only
+ * while it is complete, that is until the record ring or the text slab first wraps and drops old messages;
+ * lookups by id keep working for whatever it still holds. Disabled unless socialmedia.offheap.enabled=true.
+ */
+@Component
+@Lazy(false)
+public class OffHeapMessageCache implements SmartInitializingSingleton {
+
+    private static final int RECORD_BYTES = 48;
+    private static final int SEQ = 0;
+    private static final int MESSAGE_ID = 8;
+    private static final int POSTED_BY = 12;
+    private static final int TIME = 16;
+    private static final int TEXT_POSITION = 24;
+    private static final int TEXT_LENGTH = 32;
+    private static final int FLAGS = 36;
+    private static final int PREVIOUS = 40;
+
+    private static final int HAS_POSTED_BY = 1;
+    private static final int HAS_TIME = 2;
+    private static final int DELETED = 4;
+    private static final long NONE = -1;
+
+    private static final int SCRATCH_BYTES = 4096;
+    private static final int MAX_TEXT_BYTES = SCRATCH_BYTES - 128;
+    private static final byte[] MESSAGE_ID_FIELD = "{\"messageId\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] POSTED_BY_FIELD = ",\"postedBy\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TEXT_FIELD = ",\"messageText\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TIME_FIELD = ",\"timePostedEpoch\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LONG_MIN = Long.toString(Long.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+
+    private final MessageStore messageStore;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final int capacity;
+    private final int textCapacity;
+    private final ByteBuffer records;
+    private final ByteBuffer text;
+    private final IntLongHashMap seqById = new IntLongHashMap();
+    private final IntLongHashMap newestSeqByPostedBy = new IntLongHashMap();
+    private final StampedLock lock = new StampedLock();
+    private final ThreadLocal<byte[]> scratch = ThreadLocal.withInitial(() -> new byte[SCRATCH_BYTES]);
+    private final Counter hits;
+
+    private long nextSeq;
+    private long textEnd;
+    private volatile boolean complete;
+
+    @Autowired
+    public OffHeapMessageCache(MessageStore messageStore, ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                               @Value("${socialmedia.offheap.enabled:false}") boolean enabled,
+                               @Value("${socialmedia.offheap.capacity:1048576}") int capacity,
+                               @Value("${socialmedia.offheap.text-bytes:134217728}") int textCapacity) {
+        this.messageStore = messageStore;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.capacity = capacity;
+        this.textCapacity = textCapacity;
+        this.records = enabled ? ByteBuffer.allocateDirect(Math.multiplyExact(capacity, RECORD_BYTES)) : null;
+        this.text = enabled ? ByteBuffer.allocateDirect(textCapacity) : null;
+        this.hits = Counter.builder("messages.offheap.hits")
+                .description("Reads served from the off-heap message cache")
+                .register(meterRegistry);
+        meterRegistry.gauge("messages.offheap.entries", this, cache -> cache.size());
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!enabled) {
+            return;
+        }
+        long stamp = lock.writeLock();
+        try {
+            complete = true;
+            for (Message message : messageStore.findAll()) {
+                insert(message);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        System.out.println("Off-heap message cache loaded " + size() + " messages"
+                + (complete ? "." : ", too many to serve timelines."));
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public int size() {
+        if (!enabled) {
+            return 0;
+        }
+        long stamp = lock.readLock();
+        try {
+            return seqById.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessageCreated(MessageCreatedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        long stamp = lock.writeLock();
+        try {
+            insert(event.getMessage());
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Replaces the text of a cached message.
+     * @param messageId
+     * @param messageText
+     */
+    public void updateText(int messageId, String messageText) {
+        if (!enabled) {
+            return;
+        }
+        byte[] textJson = encodeText(messageText);
+        long stamp = lock.writeLock();
+        try {
+            long seq = seqById.get(messageId);
+            if (seq == IntLongHashMap.MISSING) {
+                return;
+            }
+            int record = recordFor(seq);
+            if (record < 0 || textJson.length > MAX_TEXT_BYTES) {
+                drop(messageId);
+                return;
+            }
+            records.putLong(record + TEXT_POSITION, appendText(textJson));
+            records.putInt(record + TEXT_LENGTH, textJson.length);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Drops a deleted message.
+     * @param messageId
+     */
+    public void remove(int messageId) {
+        if (!enabled) {
+            return;
+        }
+        long stamp = lock.writeLock();
+        try {
+            drop(messageId);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @param messageId
+     * @return a view of the cached message, or null if it is not cached
+     */
+    public MessageView find(int messageId) {
+        if (!enabled) {
+            return null;
+        }
+        long stamp = lock.readLock();
+        try {
+            long seq = seqById.get(messageId);
+            if (seq == IntLongHashMap.MISSING || recordFor(seq) < 0) {
+                return null;
+            }
+            hits.increment();
+            return new MessageView(this, seq);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @param messageId
+     * @return the cached message as a Message, or null if it is not cached
+     */
+    public Message get(int messageId) {
+        MessageView view = find(messageId);
+        return view != null ? view.toMessage() : null;
+    }
+
+    /**
+     * @param postedBy
+     * @return a view of all the user's messages sorted by messageId, or null while the cache is not complete
+     */
+    public TimelineView timeline(int postedBy) {
+        if (!enabled || !complete) {
+            return null;
+        }
+        long stamp = lock.readLock();
+        try {
+            if (!complete) {
+                return null;
+            }
+            long[] seqs = new long[16];
+            int count = 0;
+            long seq = newestSeqByPostedBy.get(postedBy);
+            while (seq != IntLongHashMap.MISSING && seq != NONE && seq >= nextSeq - capacity) {
+                int record = slot(seq);
+                if (records.getLong(record + SEQ) != seq) {
+                    break;
+                }
+                if ((records.getInt(record + FLAGS) & DELETED) == 0) {
+                    if (count == seqs.length) {
+                        seqs = Arrays.copyOf(seqs, count * 2);
+                    }
+                    seqs[count++] = seq;
+                }
+                seq = records.getLong(record + PREVIOUS);
+            }
+            sortByMessageId(seqs, count);
+            hits.increment();
+            return new TimelineView(this, seqs, count);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private boolean writeJson(long seq, OutputStream out, boolean separator) throws IOException {
+        byte[] buffer = scratch.get();
+        int length;
+        long stamp = lock.readLock();
+        try {
+            int record = recordFor(seq);
+            if (record < 0) {
+                return false;
+            }
+            buffer[0] = ',';
+            length = encodeJson(record, buffer, 1);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        if (separator) {
+            out.write(buffer, 0, length);
+        } else {
+            out.write(buffer, 1, length - 1);
+        }
+        return true;
+    }
+
+    private Message materialize(long seq) {
+        int messageId;
+        Integer postedBy;
+        Long timePostedEpoch;
+        byte[] textJson;
+        long stamp = lock.readLock();
+        try {
+            int record = recordFor(seq);
+            if (record < 0) {
+                return null;
+            }
+            int flags = records.getInt(record + FLAGS);
+            messageId = records.getInt(record + MESSAGE_ID);
+            postedBy = (flags & HAS_POSTED_BY) != 0 ? records.getInt(record + POSTED_BY) : null;
+            timePostedEpoch = (flags & HAS_TIME) != 0 ? records.getLong(record + TIME) : null;
+            textJson = new byte[records.getInt(record + TEXT_LENGTH)];
+            copyText(records.getLong(record + TEXT_POSITION), textJson, 0, textJson.length);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        try {
+            return new Message(messageId, postedBy, objectMapper.readValue(textJson, String.class), timePostedEpoch);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Caller holds the write lock. */
+    private void insert(Message message) {
+        int messageId = message.getMessageId();
+        byte[] textJson = encodeText(message.getMessageText());
+        drop(messageId);
+        if (textJson.length > MAX_TEXT_BYTES) {
+            complete = false;
+            return;
+        }
+
+        long seq = nextSeq++;
+        int record = slot(seq);
+        if (seq >= capacity) {
+            complete = false;
+            long evicted = records.getLong(record + SEQ);
+            if (seqById.get(records.getInt(record + MESSAGE_ID)) == evicted) {
+                seqById.remove(records.getInt(record + MESSAGE_ID));
+            }
+            int evictedFlags = records.getInt(record + FLAGS);
+            if ((evictedFlags & HAS_POSTED_BY) != 0
+                    && newestSeqByPostedBy.get(records.getInt(record + POSTED_BY)) == evicted) {
+                newestSeqByPostedBy.remove(records.getInt(record + POSTED_BY));
+            }
+        }
+
+        long textPosition = appendText(textJson);
+        int flags = (message.getPostedBy() != null ? HAS_POSTED_BY : 0)
+                | (message.getTimePostedEpoch() != null ? HAS_TIME : 0);
+        long previous = NONE;
+        if (message.getPostedBy() != null) {
+            long newest = newestSeqByPostedBy.put(message.getPostedBy(), seq);
+            previous = newest == IntLongHashMap.MISSING ? NONE : newest;
+        }
+        records.putLong(record + SEQ, seq);
+        records.putInt(record + MESSAGE_ID, messageId);
+        records.putInt(record + POSTED_BY, message.getPostedBy() != null ? message.getPostedBy() : 0);
+        records.putLong(record + TIME, message.getTimePostedEpoch() != null ? message.getTimePostedEpoch() : 0);
+        records.putLong(record + TEXT_POSITION, textPosition);
+        records.putInt(record + TEXT_LENGTH, textJson.length);
+        records.putInt(record + FLAGS, flags);
+        records.putLong(record + PREVIOUS, previous);
+        seqById.put(messageId, seq);
+    }
+
+    /** Caller holds the write lock. */
+    private void drop(int messageId) {
+        long seq = seqById.remove(messageId);
+        if (seq != IntLongHashMap.MISSING && seq >= nextSeq - capacity) {
+            int record = slot(seq);
+            records.putInt(record + FLAGS, records.getInt(record + FLAGS) | DELETED);
+        }
+    }
+
+    /** Caller holds the write lock. Returns the logical position of the text. */
+    private long appendText(byte[] textJson) {
+        long position = textEnd;
+        int offset = (int) (position % textCapacity);
+        if (offset + textJson.length > textCapacity) {
+            position += textCapacity - offset;
+            offset = 0;
+        }
+        if (position + textJson.length > textCapacity) {
+            complete = false;
+        }
+        for (int i = 0; i < textJson.length; i++) {
+            text.put(offset + i, textJson[i]);
+        }
+        textEnd = position + textJson.length;
+        return position;
+    }
+
+    /** Caller holds a lock. Returns the record offset, or -1 if the message was evicted, overwritten or deleted. */
+    private int recordFor(long seq) {
+        if (seq >= nextSeq || seq < nextSeq - capacity) {
+            return -1;
+        }
+        int record = slot(seq);
+        if (records.getLong(record + SEQ) != seq
+                || (records.getInt(record + FLAGS) & DELETED) != 0
+                || records.getLong(record + TEXT_POSITION) < textEnd - textCapacity) {
+            return -1;
+        }
+        return record;
+    }
+
+    private int slot(long seq) {
+        return (int) (seq % capacity) * RECORD_BYTES;
+    }
+
+    /** Caller holds a lock. Insertion sort: timelines arrive almost sorted, newest first. */
+    private void sortByMessageId(long[] seqs, int count) {
+        for (int i = 0, j = count - 1; i < j; i++, j--) {
+            long swap = seqs[i];
+            seqs[i] = seqs[j];
+            seqs[j] = swap;
+        }
+        for (int i = 1; i < count; i++) {
+            long seq = seqs[i];
+            int messageId = records.getInt(slot(seq) + MESSAGE_ID);
+            int j = i - 1;
+            while (j >= 0 && records.getInt(slot(seqs[j]) + MESSAGE_ID) > messageId) {
+                seqs[j + 1] = seqs[j];
+                j--;
+            }
+            seqs[j + 1] = seq;
+        }
+    }
+
+    /** Caller holds a lock. */
+    private int encodeJson(int record, byte[] buffer, int offset) {
+        int flags = records.getInt(record + FLAGS);
+        offset = put(buffer, offset, MESSAGE_ID_FIELD);
+        offset = putLong(buffer, offset, records.getInt(record + MESSAGE_ID));
+        offset = put(buffer, offset, POSTED_BY_FIELD);
+        offset = (flags & HAS_POSTED_BY) != 0
+                ? putLong(buffer, offset, records.getInt(record + POSTED_BY))
+                : put(buffer, offset, NULL);
+        offset = put(buffer, offset, TEXT_FIELD);
+        int textLength = records.getInt(record + TEXT_LENGTH);
+        copyText(records.getLong(record + TEXT_POSITION), buffer, offset, textLength);
+        offset += textLength;
+        offset = put(buffer, offset, TIME_FIELD);
+        offset = (flags & HAS_TIME) != 0
+                ? putLong(buffer, offset, records.getLong(record + TIME))
+                : put(buffer, offset, NULL);
+        buffer[offset++] = '}';
+        return offset;
+    }
+
+    private void copyText(long position, byte[] buffer, int offset, int length) {
+        int start = (int) (position % textCapacity);
+        for (int i = 0; i < length; i++) {
+            buffer[offset + i] = text.get(start + i);
+        }
+    }
+
+    private byte[] encodeText(String messageText) {
+        if (messageText == null) {
+            return NULL;
+        }
+        try {
+            return objectMapper.writeValueAsBytes(messageText);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int put(byte[] buffer, int offset, byte[] bytes) {
+        System.arraycopy(bytes, 0, buffer, offset, bytes.length);
+        return offset + bytes.length;
+    }
+
+    private static int putLong(byte[] buffer, int offset, long value) {
+        if (value == Long.MIN_VALUE) {
+            return put(buffer, offset, LONG_MIN);
+        }
+        if (value < 0) {
+            buffer[offset++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return offset + digits;
+    }
+
+    /**
+     * A cached message, read from off-heap memory when serialized.
+     */
+    public static final class MessageView {
+        private final OffHeapMessageCache cache;
+        private final long seq;
+
+        private MessageView(OffHeapMessageCache cache, long seq) {
+            this.cache = cache;
+            this.seq = seq;
+        }
+
+        /**
+         * @param out
+         * @return false if the message was deleted after it was looked up, in which case nothing is written
+         * @throws IOException if out fails
+         */
+        public boolean writeJson(OutputStream out) throws IOException {
+            return cache.writeJson(seq, out, false);
+        }
+
+        @JsonValue
+        public Message toMessage() {
+            return cache.materialize(seq);
+        }
+    }
+
+    /**
+     * A user's cached messages, read from off-heap memory when serialized. Messages deleted in the meantime
+     * are left out of the JSON and read as null through get.
+     */
+    public static final class TimelineView extends AbstractList<Message> {
+        private final OffHeapMessageCache cache;
+        private final long[] seqs;
+        private final int size;
+
+        private TimelineView(OffHeapMessageCache cache, long[] seqs, int size) {
+            this.cache = cache;
+            this.seqs = seqs;
+            this.size = size;
+        }
+
+        /**
+         * Writes the messages as a JSON array.
+         * @param out
+         * @throws IOException if out fails
+         */
+        public void writeJson(OutputStream out) throws IOException {
+            out.write('[');
+            boolean separator = false;
+            for (int i = 0; i < size; i++) {
+                separator |= cache.writeJson(seqs[i], out, separator);
+            }
+            out.write(']');
+        }
+
+        @Override
+        public Message get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+            }
+            return cache.materialize(seqs[index]);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.service;
+
+/**
+ * The outcome of a service call whose expected failures (bad input, a taken username, wrong credentials) are
+ * returned rather than thrown. Exceptions are left for real errors, so a flood of invalid requests costs no
+ * stack traces.
+ *
+ * A failure carries no value, so the fixed failures a service can return are kept as constants and shared by
+ * every call; cast() reuses one for any result type.
+ *
+ * @param <T> the value type
+ */
+public final class Result<T> {
+
+    public enum Status {
+        OK,
+        INVALID,
+        CONFLICT,
+        UNAUTHORIZED
+    }
+
+    private static final Result<?> VALID = new Result<>(Status.OK, null, null);
+
+    private final Status status;
+    private final T value;
+    private final String reason;
+
+    private Result(Status status, T value, String reason) {
+        this.status = status;
+        this.value = value;
+        this.reason = reason;
+    }
+
+    public static <T> Result<T> ok(T value) {
+        return new Result<>(Status.OK, value, null);
+    }
+
+    /**
+     * @return the shared result of a check that passed
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Result<T> valid() {
+        return (Result<T>) VALID;
+    }
+
+    public static <T> Result<T> invalid(String reason) {
+        return new Result<>(Status.INVALID, null, reason);
+    }
+
+    public static <T> Result<T> conflict(String reason) {
+        return new Result<>(Status.CONFLICT, null, reason);
+    }
+
+    public static <T> Result<T> unauthorized(String reason) {
+        return new Result<>(Status.UNAUTHORIZED, null, reason);
+    }
+
+    public boolean isOk() {
+        return status == Status.OK;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the value, or null for a failure
+     */
+    public T getValue() {
+        return value;
+    }
+
+    /**
+     * @return why the call failed, or null if it did not
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * @return this failure as a result of another type
+     * @throws IllegalStateException if this result is not a failure
+     */
+    @SuppressWarnings("unchecked")
+    public <U> Result<U> cast() {
+        if (isOk()) {
+            throw new IllegalStateException("Only a failure can be cast.");
+        }
+        return (Result<U>) this;
+    }
+
+    @Override
+    public String toString() {
+        return isOk() ? "OK " + value : status + " " + reason;
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.util;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads RFC 4180 CSV one record at a time: comma-separated fields, optionally in double quotes, with "" for a
+ * quote inside a quoted field. Quoted fields may span lines. Records end with LF or CRLF.
+ */
+public final class CsvReader implements Closeable {
+
+    private final BufferedReader in;
+    private long line = 1;
+    private long recordLine;
+
+    public CsvReader(Reader in) {
+        this.in = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+    }
+
+    /**
+     * @return the fields of the next record, or null at the end of the input
+     * @throws IOException if the input fails, or ends inside a quoted field
+     */
+    public List<String> readRecord() throws IOException {
+        int c = in.read();
+        if (c == -1) {
+            return null;
+        }
+        recordLine = line;
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean afterQuote = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    throw new IOException("Unterminated quoted field starting on line " + recordLine);
+                }
+                if (c == '"') {
+                    in.mark(1);
+                    if (in.read() == '"') {
+                        field.append('"');
+                    } else {
+                        in.reset();
+                        quoted = false;
+                        afterQuote = true;
+                    }
+                } else {
+                    if (c == '\n') {
+                        line++;
+                    }
+                    field.append((char) c);
+                }
+            } else if (c == ',' || c == '\n' || c == -1) {
+                fields.add(field.toString());
+                if (c != ',') {
+                    if (c == '\n') {
+                        line++;
+                    }
+                    return fields;
+                }
+                field.setLength(0);
+                afterQuote = false;
+            } else if (c == '\r') {
+                in.mark(1);
+                if (in.read() != '\n') {
+                    in.reset();
+                    field.append('\r');
+                } else {
+                    fields.add(field.toString());
+                    line++;
+                    return fields;
+                }
+            } else if (c == '"' && field.length() == 0 && !afterQuote) {
+                quoted = true;
+            } else {
+                field.append((char) c);
+            }
+            c = in.read();
+        }
+    }
+
+    /**
+     * @return the line the last record returned by readRecord starts on, counting from 1
+     */
+    public long getRecordLine() {
+        return recordLine;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
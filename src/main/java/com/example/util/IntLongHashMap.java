@@ -0,0 +1,170 @@
+package com.example.util;
+
+/**
+ * An open-addressing hash map from int to long, without boxing. Linear probing, backward-shift deletion.
+ * Not thread-safe.
+ */
+public final class IntLongHashMap {
+
+    /** Returned by get, put and remove when the key has no value. */
+    public static final long MISSING = Long.MIN_VALUE;
+
+    private static final int EMPTY_KEY = 0;
+
+    private int[] keys;
+    private long[] values;
+    private int mask;
+    private int size;
+    private int resizeAt;
+    private boolean hasZeroKey;
+    private long zeroValue;
+
+    public IntLongHashMap() {
+        this(16);
+    }
+
+    public IntLongHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 3 / 2) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Visits one entry.
+     */
+    @FunctionalInterface
+    public interface EntryVisitor {
+        void visit(int key, long value);
+    }
+
+    public int size() {
+        return size + (hasZeroKey ? 1 : 0);
+    }
+
+    /**
+     * @param key
+     * @return the value, or MISSING
+     */
+    public long get(int key) {
+        if (key == EMPTY_KEY) {
+            return hasZeroKey ? zeroValue : MISSING;
+        }
+        for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+            int k = keys[slot];
+            if (k == key) {
+                return values[slot];
+            }
+            if (k == EMPTY_KEY) {
+                return MISSING;
+            }
+        }
+    }
+
+    /**
+     * @param key
+     * @param value
+     * @return the previous value, or MISSING
+     */
+    public long put(int key, long value) {
+        if (key == EMPTY_KEY) {
+            long previous = hasZeroKey ? zeroValue : MISSING;
+            hasZeroKey = true;
+            zeroValue = value;
+            return previous;
+        }
+        for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+            int k = keys[slot];
+            if (k == key) {
+                long previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            if (k == EMPTY_KEY) {
+                keys[slot] = key;
+                values[slot] = value;
+                if (++size > resizeAt) {
+                    rehash(keys.length << 1);
+                }
+                return MISSING;
+            }
+        }
+    }
+
+    /**
+     * @param key
+     * @return the removed value, or MISSING
+     */
+    public long remove(int key) {
+        if (key == EMPTY_KEY) {
+            long previous = hasZeroKey ? zeroValue : MISSING;
+            hasZeroKey = false;
+            return previous;
+        }
+        int slot = slot(key);
+        while (keys[slot] != key) {
+            if (keys[slot] == EMPTY_KEY) {
+                return MISSING;
+            }
+            slot = (slot + 1) & mask;
+        }
+        long previous = values[slot];
+
+        // Shift later entries of the same probe run back, so lookups never stop early at the hole.
+        int hole = slot;
+        for (int next = (hole + 1) & mask; keys[next] != EMPTY_KEY; next = (next + 1) & mask) {
+            int home = slot(keys[next]);
+            boolean movable = hole <= next ? (home <= hole || home > next) : (home <= hole && home > next);
+            if (movable) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+        }
+        keys[hole] = EMPTY_KEY;
+        size--;
+        return previous;
+    }
+
+    /**
+     * Calls the visitor for every entry, in no particular order. The map must not be changed meanwhile.
+     * @param visitor
+     */
+    public void forEach(EntryVisitor visitor) {
+        if (hasZeroKey) {
+            visitor.visit(EMPTY_KEY, zeroValue);
+        }
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != EMPTY_KEY) {
+                visitor.visit(keys[slot], values[slot]);
+            }
+        }
+    }
+
+    private int slot(int key) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new long[capacity];
+        mask = capacity - 1;
+        resizeAt = capacity / 3 * 2;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            int key = oldKeys[i];
+            if (key != EMPTY_KEY) {
+                int slot = slot(key);
+                while (keys[slot] != EMPTY_KEY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.util;
+
+import com.example.entity.Message;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The compact binary form of a message used by the storage files: messageId, a flags byte saying which of
+ * the nullable fields follow, then postedBy, timePostedEpoch and the UTF-8 text with a two-byte length.
+ */
+public final class MessageRecordCodec {
+
+    private static final int HAS_POSTED_BY = 1;
+    private static final int HAS_TEXT = 2;
+    private static final int HAS_TIME = 4;
+
+    private MessageRecordCodec() {
+    }
+
+    /**
+     * @param out
+     * @param message a message with a messageId
+     * @throws IOException if out fails
+     */
+    public static void write(DataOutput out, Message message) throws IOException {
+        int flags = (message.getPostedBy() != null ? HAS_POSTED_BY : 0)
+                | (message.getMessageText() != null ? HAS_TEXT : 0)
+                | (message.getTimePostedEpoch() != null ? HAS_TIME : 0);
+        out.writeInt(message.getMessageId());
+        out.writeByte(flags);
+        if (message.getPostedBy() != null) {
+            out.writeInt(message.getPostedBy());
+        }
+        if (message.getTimePostedEpoch() != null) {
+            out.writeLong(message.getTimePostedEpoch());
+        }
+        if (message.getMessageText() != null) {
+            byte[] text = message.getMessageText().getBytes(StandardCharsets.UTF_8);
+            out.writeShort(text.length);
+            out.write(text);
+        }
+    }
+
+    /**
+     * Reads one message and leaves the buffer positioned after it.
+     * @param in
+     * @return Message
+     */
+    public static Message read(ByteBuffer in) {
+        int messageId = in.getInt();
+        int flags = in.get();
+        Integer postedBy = (flags & HAS_POSTED_BY) != 0 ? in.getInt() : null;
+        Long timePostedEpoch = (flags & HAS_TIME) != 0 ? in.getLong() : null;
+        String messageText = null;
+        if ((flags & HAS_TEXT) != 0) {
+            byte[] text = new byte[Short.toUnsignedInt(in.getShort())];
+            in.get(text);
+            messageText = new String(text, StandardCharsets.UTF_8);
+        }
+        return new Message(messageId, postedBy, messageText, timePostedEpoch);
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent loads of the same key: the first caller runs the load, and callers arriving while it
+ * runs wait for its result instead of running their own. Nothing is kept once the load finishes, so the next
+ * caller after that loads again.
+ *
+ * forget(key) detaches a load in progress, for callers that have just changed what it reads: later callers
+ * start a fresh load instead of joining one that may have read the old state.
+ *
+ * @param <K> the key type
+ * @param <V> the result type
+ */
+public final class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * @param key
+     * @param loader run by the first caller for the key; its result or exception is shared with the others
+     * @return the loaded value
+     */
+    public V load(K key, Supplier<V> loader) {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            coalesced.increment();
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        loads.increment();
+        try {
+            V value = loader.get();
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * Stops callers from joining the load in progress for the key, if there is one.
+     * @param key
+     */
+    public void forget(K key) {
+        inFlight.remove(key);
+    }
+
+    /**
+     * @return the number of loads actually run
+     */
+    public long loadCount() {
+        return loads.sum();
+    }
+
+    /**
+     * @return the number of callers that shared another caller's load instead of running their own
+     */
+    public long coalescedCount() {
+        return coalesced.sum();
+    }
+}
@@ -12,6 +12,9 @@ create table message (
     timePostedEpoch bigint,
     foreign key (postedBy) references account(accountId)
 );
+-- Time-range queries, global and per user, are index range scans on these.
+create index message_time_idx on message(timePostedEpoch);
+create index message_postedBy_time_idx on message(postedBy, timePostedEpoch);
 
 -- Starting test values with ids of 9999 to avoid test issues
 insert into account values (9999, 'testuser1', 'password');
@@ -0,0 +1,17 @@
+-- Schema for the persistent profile. Every statement is a no-op when the object already exists,
+-- so a restart keeps its data and skips straight to serving requests.
+create table if not exists account (
+    accountId int primary key auto_increment,
+    username varchar(255) not null unique,
+    password varchar(255)
+);
+create table if not exists message (
+    messageId int primary key auto_increment,
+    postedBy int,
+    messageText varchar(255),
+    timePostedEpoch bigint,
+    foreign key (postedBy) references account(accountId)
+);
+create index if not exists message_time_idx on message(timePostedEpoch);
+create index if not exists message_postedBy_time_idx on message(postedBy, timePostedEpoch);
+create sequence if not exists hibernate_sequence start with 1 increment by 1;
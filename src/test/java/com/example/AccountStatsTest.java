@@ -0,0 +1,128 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.entity.Message;
+import com.example.metrics.SqlStatementMetrics;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class AccountStatsTest {
+    ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/9999/stats
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the stats built at startup from the sample message
+     */
+    @Test
+    public void getStatsBuiltAtStartup() throws IOException, InterruptedException {
+        assertStats(9999, 1, 1669947792L, 1669947792L);
+    }
+
+    /**
+     * Creating and deleting messages keeps the count and time range current, including deleting the
+     * first or the last message, whose range is recomputed by one aggregate query.
+     */
+    @Test
+    public void followCreatesAndDeletes() throws IOException, InterruptedException {
+        Message early = postMessage(9998, 1000L);
+        Message middle = postMessage(9998, 2000L);
+        Message late = postMessage(9998, 3000L);
+        assertStats(9998, 3, 1000L, 3000L);
+
+        delete(late.getMessageId());
+        app.getBean(SqlStatementMetrics.class).reset();
+        assertStats(9998, 2, 1000L, 2000L);
+        JsonNode statements = objectMapper.readTree(webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/actuator/datasource")).build(),
+                HttpResponse.BodyHandlers.ofString()).body()).get("statements");
+        Assertions.assertEquals(1, statements.size(), statements.toString());
+        String sql = statements.get(0).get("sql").asText().toLowerCase();
+        Assertions.assertTrue(sql.contains("min(") && sql.contains("max("), sql);
+        delete(early.getMessageId());
+        assertStats(9998, 1, 2000L, 2000L);
+        delete(middle.getMessageId());
+        assertStats(9998, 0, null, null);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1234/stats for an account without messages
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: a count of 0 and no time range
+     */
+    @Test
+    public void getStatsWithoutMessages() throws IOException, InterruptedException {
+        assertStats(1234, 0, null, null);
+    }
+
+    private void assertStats(int accountId, long count, Long first, Long last) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/" + accountId + "/stats"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode());
+        JsonNode stats = objectMapper.readTree(response.body());
+        Assertions.assertEquals(accountId, stats.get("accountId").asInt());
+        Assertions.assertEquals(count, stats.get("messageCount").asLong(), "Actual=" + response.body());
+        Assertions.assertEquals(first, stats.get("firstPostedEpoch").isNull() ? null : stats.get("firstPostedEpoch").asLong());
+        Assertions.assertEquals(last, stats.get("lastPostedEpoch").isNull() ? null : stats.get("lastPostedEpoch").asLong());
+    }
+
+    private Message postMessage(int postedBy, long timePostedEpoch) throws IOException, InterruptedException {
+        String json = "{\"postedBy\":" + postedBy + ",\"messageText\": \"hello\",\"timePostedEpoch\": " + timePostedEpoch + "}";
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode(), "Actual=" + response.body());
+        return objectMapper.readValue(response.body(), Message.class);
+    }
+
+    private void delete(int messageId) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/" + messageId))
+                .DELETE()
+                .build();
+        Assertions.assertEquals("1", webClient.send(request, HttpResponse.BodyHandlers.ofString()).body());
+    }
+}
@@ -0,0 +1,133 @@
+package com.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.allocation.AllocationRecorder;
+import com.example.entity.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Fails when a request allocates more than its endpoint's budget.
+ *
+ * Replays the requests of the endpoint tests (registration, login, create, the message reads, update and
+ * delete), warms up, then takes the median bytes allocated per request on the server thread. Budgets are
+ * bytes per request in allocation-budgets.properties on the test classpath, or in the file named by the
+ * allocation.budgets system property; every endpoint exercised needs one. Rate limiting is off so the
+ * replay is not throttled.
+ */
+public class AllocationBudgetTest {
+    private static final int WARMUP_ROUNDS = 300;
+    private static final int MEASURED_ROUNDS = 200;
+
+    ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app with the allocation recorder, and create a new
+     * webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {"--socialmedia.rate-limit.enabled=false"};
+        app = SpringApplication.run(new Class<?>[] {SocialMediaApp.class, AllocationRecorder.Config.class}, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    @Test
+    public void requestsStayWithinAllocationBudgets() throws IOException, InterruptedException {
+        AllocationRecorder recorder = app.getBean(AllocationRecorder.class);
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            replay("warmup" + round);
+        }
+        recorder.start();
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            replay("user" + round);
+        }
+        recorder.stop();
+
+        Properties budgets = budgets();
+        List<String> failures = new ArrayList<>();
+        System.out.printf("%-36s %12s %12s%n", "endpoint", "bytes/req", "budget");
+        for (Map.Entry<String, Long> measured : recorder.medianBytesPerRequest().entrySet()) {
+            String budget = budgets.getProperty(measured.getKey());
+            System.out.printf("%-36s %12d %12s%n", measured.getKey(), measured.getValue(), budget);
+            if (budget == null) {
+                failures.add(measured.getKey() + " has no allocation budget");
+            } else if (measured.getValue() > Long.parseLong(budget.trim())) {
+                failures.add(measured.getKey() + " allocated " + measured.getValue() + " bytes per request, budget " + budget.trim());
+            }
+        }
+        Assertions.assertEquals(8, recorder.medianBytesPerRequest().size(), recorder.medianBytesPerRequest().toString());
+        Assertions.assertTrue(failures.isEmpty(), String.join("\n", failures));
+    }
+
+    /**
+     * One request to each endpoint; the message created is updated and deleted again so the table stays small.
+     */
+    private void replay(String username) throws IOException, InterruptedException {
+        expectOk(send("/register", "POST", "{\"username\":\"" + username + "\",\"password\":\"password\"}"));
+        expectOk(send("/login", "POST", "{\"username\":\"testuser1\",\"password\":\"password\"}"));
+        HttpResponse<String> created = expectOk(send("/messages", "POST",
+                "{\"postedBy\":9999,\"messageText\":\"hello message\",\"timePostedEpoch\":1669947792}"));
+        int messageId = objectMapper.readValue(created.body(), Message.class).getMessageId();
+        expectOk(send("/messages", "GET", null));
+        expectOk(send("/messages/" + messageId, "GET", null));
+        expectOk(send("/accounts/9999/messages", "GET", null));
+        expectOk(send("/messages/" + messageId, "PATCH", "{\"messageText\":\"updated message\"}"));
+        expectOk(send("/messages/" + messageId, "DELETE", null));
+    }
+
+    private Properties budgets() throws IOException {
+        Properties budgets = new Properties();
+        String file = System.getProperty("allocation.budgets");
+        try (InputStream in = file != null ? Files.newInputStream(Path.of(file))
+                : getClass().getResourceAsStream("/allocation-budgets.properties")) {
+            Assertions.assertNotNull(in, "No allocation budgets found");
+            budgets.load(in);
+        }
+        return budgets;
+    }
+
+    private static HttpResponse<String> expectOk(HttpResponse<String> response) {
+        Assertions.assertEquals(200, response.statusCode(), response.request().method() + " " + response.uri());
+        return response;
+    }
+
+    private HttpResponse<String> send(String path, String method, String json) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, json == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(json));
+        if (json != null) {
+            request.header("Content-Type", "application/json");
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
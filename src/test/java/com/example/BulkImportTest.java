@@ -0,0 +1,167 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.entity.Message;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class BulkImportTest {
+    ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database and restart the app with an admin token and small import batches.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {
+                "--socialmedia.admin.token=secret",
+                "--socialmedia.import.batch-size=3"};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * Sending a CSV of accounts to POST localhost:8080/admin/import/accounts, with a blank username, a short
+     * password, a username already in the database and one repeated in the file
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: one reject per bad row with its line number, then the counts; the imported accounts can log in
+     */
+    @Test
+    public void importAccountsFromCsv() throws IOException, InterruptedException {
+        String csv = "username,password\n"
+                + "alice,secret1\n"
+                + "\"bob, the builder\",\"pa\"\"ss\"\n"
+                + ",password\n"
+                + "carol,abc\n"
+                + "testuser1,password\n"
+                + "alice,another\n"
+                + "dave,password\n"
+                + "erin,password\n";
+        List<JsonNode> report = post("/admin/import/accounts", "text/csv", csv);
+
+        Assertions.assertEquals(List.of(
+                "4 Username cannot be blank.",
+                "5 Password is too short.",
+                "6 Username is already taken.",
+                "7 Username is already taken."), rejects(report));
+        JsonNode summary = report.get(report.size() - 1);
+        Assertions.assertEquals(4, summary.get("imported").asLong());
+        Assertions.assertEquals(4, summary.get("rejected").asLong());
+
+        Assertions.assertEquals(200, login("bob, the builder", "pa\"ss").statusCode());
+        Assertions.assertEquals(200, login("erin", "password").statusCode());
+        Assertions.assertEquals(401, login("carol", "abc").statusCode());
+    }
+
+    /**
+     * Sending NDJSON messages to POST localhost:8080/admin/import/messages, with an unknown user, blank text,
+     * a bad number and a line that is not JSON
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: one reject per bad row, then the counts; the imported messages are in the user's timeline
+     */
+    @Test
+    public void importMessagesFromNdjson() throws IOException, InterruptedException {
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < 7; i++) {
+            ndjson.append("{\"postedBy\":9998,\"messageText\":\"imported ").append(i).append("\",\"timePostedEpoch\":").append(1000 + i).append("}\n");
+        }
+        ndjson.append("{\"postedBy\":1234,\"messageText\":\"nobody\",\"timePostedEpoch\":1}\n");
+        ndjson.append("{\"postedBy\":9998,\"messageText\":\"\",\"timePostedEpoch\":1}\n");
+        ndjson.append("{\"postedBy\":\"x\",\"messageText\":\"bad\",\"timePostedEpoch\":1}\n");
+        ndjson.append("not json\n");
+        List<JsonNode> report = post("/admin/import/messages", "application/x-ndjson", ndjson.toString());
+
+        Assertions.assertEquals(List.of(
+                "8 User ID does not exist.",
+                "9 Message cannot be blank.",
+                "10 postedBy is not a number.",
+                "11 Invalid JSON."), rejects(report));
+        Assertions.assertEquals(7, report.get(report.size() - 1).get("imported").asLong());
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/9998/messages"))
+                .build();
+        List<Message> messages = objectMapper.readValue(webClient.send(request, HttpResponse.BodyHandlers.ofString()).body(),
+                new TypeReference<List<Message>>(){});
+        Assertions.assertEquals(7, messages.size());
+        Assertions.assertEquals("imported 6", messages.get(6).getMessageText());
+    }
+
+    /**
+     * A CSV without the needed columns is rejected as a whole with 400.
+     */
+    @Test
+    public void importCsvWithoutHeader() throws IOException, InterruptedException {
+        HttpResponse<String> response = webClient.send(importRequest("/admin/import/accounts", "text/csv",
+                "alice,secret1\n"), HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(400, response.statusCode());
+    }
+
+    private List<String> rejects(List<JsonNode> report) {
+        List<String> rejects = new ArrayList<>();
+        for (JsonNode line : report.subList(0, report.size() - 1)) {
+            rejects.add(line.get("line").asLong() + " " + line.get("reason").asText());
+        }
+        return rejects;
+    }
+
+    private List<JsonNode> post(String path, String contentType, String body) throws IOException, InterruptedException {
+        HttpResponse<String> response = webClient.send(importRequest(path, contentType, body), HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode(), "Actual=" + response.body());
+        List<JsonNode> lines = new ArrayList<>();
+        for (String line : response.body().split("\n")) {
+            lines.add(objectMapper.readTree(line));
+        }
+        return lines;
+    }
+
+    private HttpRequest importRequest(String path, String contentType, String body) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", contentType)
+                .header("X-Admin-Token", "secret")
+                .build();
+    }
+
+    private HttpResponse<String> login(String username, String password) throws IOException, InterruptedException {
+        String json = objectMapper.writeValueAsString(Map.of("username", username, "password", password));
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/login"))
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -126,4 +126,23 @@ public class CreateMessageTest {
         int status = response.statusCode();
         Assertions.assertEquals(400, status, "Expected Status Code 400 - Actual Code was: " + status);
     }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages without a postedBy
+     * 
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void createMessageWithoutPostedBy() throws IOException, InterruptedException {
+    	String json = "{\"messageText\": \"hello message\",\"timePostedEpoch\": 1669947792}";
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        int status = response.statusCode();
+        Assertions.assertEquals(400, status, "Expected Status Code 400 - Actual Code was: " + status);
+    }
 }
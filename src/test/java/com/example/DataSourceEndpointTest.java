@@ -0,0 +1,165 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Collection;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.metrics.SqlStatementMetrics;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+public class DataSourceEndpointTest {
+    ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app with an admin token, and create a new webClient
+     * and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {"--socialmedia.admin.token=secret"};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/9999/messages, then GET localhost:8080/actuator/datasource
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the pool snapshot, and a statement entry for the findAllByPostedBy query that ran once
+     */
+    @Test
+    public void datasourceEndpointReportsPoolAndStatements() throws IOException, InterruptedException {
+        Assertions.assertEquals(204, resetStatements().statusCode());
+        send("http://localhost:8080/accounts/9999/messages", "GET");
+
+        HttpResponse<String> response = send("http://localhost:8080/actuator/datasource", "GET");
+        int status = response.statusCode();
+        Assertions.assertEquals(200, status, "Expected Status Code 200 - Actual Code was: " + status);
+        JsonNode body = objectMapper.readTree(response.body());
+        Assertions.assertEquals("socialmedia", body.get("pool").get("name").asText());
+        Assertions.assertEquals(10, body.get("pool").get("maximumPoolSize").asInt());
+        Assertions.assertTrue(body.get("pool").has("pending"));
+        Assertions.assertEquals(1, body.get("totalStatements").asInt());
+        JsonNode statement = body.get("statements").get(0);
+        Assertions.assertTrue(statement.get("sql").asText().contains("postedBy=?"), statement.toString());
+        Assertions.assertEquals(1, statement.get("count").asInt());
+    }
+
+    /**
+     * Sending GET localhost:8080/messages?ids=... with two and with three ids, then GET localhost:8080/actuator/datasource
+     *
+     * Expected Response:
+     *  Status Code: 200, and both lookups counted under one statement whose IN list is collapsed
+     */
+    @Test
+    public void inListsShareOneStatement() throws IOException, InterruptedException {
+        resetStatements();
+        send("http://localhost:8080/messages?ids=9997,9998", "GET");
+        send("http://localhost:8080/messages?ids=9997,9998,9999", "GET");
+
+        JsonNode body = objectMapper.readTree(send("http://localhost:8080/actuator/datasource", "GET").body());
+        Assertions.assertEquals(1, body.get("statements").size(), body.toString());
+        JsonNode statement = body.get("statements").get(0);
+        Assertions.assertTrue(statement.get("sql").asText().contains("in (?...)"), statement.toString());
+        Assertions.assertEquals(2, statement.get("count").asInt());
+    }
+
+    /**
+     * Sending DELETE localhost:8080/actuator/datasource, and DELETE localhost:8080/admin/sql-statements without the
+     * admin token
+     *
+     * Expected Response:
+     *  Neither resets the statement counters
+     */
+    @Test
+    public void resetNeedsAdminToken() throws IOException, InterruptedException {
+        send("http://localhost:8080/accounts/9999/messages", "GET");
+        Assertions.assertNotEquals(204, send("http://localhost:8080/actuator/datasource", "DELETE").statusCode());
+        Assertions.assertEquals(403, send("http://localhost:8080/admin/sql-statements", "DELETE").statusCode());
+
+        JsonNode body = objectMapper.readTree(send("http://localhost:8080/actuator/datasource", "GET").body());
+        Assertions.assertTrue(body.get("totalStatements").asInt() > 0, body.toString());
+    }
+
+    /**
+     * With max-statements=2, running different queries between resets
+     *
+     * Expected Response:
+     *  At most two statements get their own jdbc.statement timer however often the counters are reset, and the
+     *  rest are timed under one tagged "other"
+     */
+    @Test
+    public void resetsKeepStatementTimersBounded() throws IOException, InterruptedException {
+        SpringApplication.exit(app);
+        app = SpringApplication.run(SocialMediaApp.class, "--socialmedia.admin.token=secret",
+                "--socialmedia.sql-metrics.max-statements=2");
+        Thread.sleep(500);
+
+        for (String path : new String[] {"/accounts/9999/messages", "/messages/9999", "/messages?ids=9997,9998",
+                "/messages", "/accounts/9999/messages?since=0&until=2000000000"}) {
+            Assertions.assertEquals(204, resetStatements().statusCode());
+            send("http://localhost:8080" + path, "GET");
+        }
+
+        Collection<Timer> timers = app.getBean(MeterRegistry.class).find("jdbc.statement").timers();
+        Assertions.assertTrue(timers.size() <= 3, timers.stream().map(timer -> timer.getId().getTag("sql"))
+                .collect(Collectors.toList()).toString());
+        Assertions.assertTrue(timers.stream().anyMatch(timer -> SqlStatementMetrics.OTHER.equals(timer.getId().getTag("sql"))));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/actuator/metrics/hikaricp.connections.acquire
+     *
+     * Expected Response:
+     *  Status Code: 200, the pool's connection acquire timer is published
+     */
+    @Test
+    public void hikariAcquireTimerIsPublished() throws IOException, InterruptedException {
+        HttpResponse<String> response = send("http://localhost:8080/actuator/metrics/hikaricp.connections.acquire", "GET");
+        int status = response.statusCode();
+        Assertions.assertEquals(200, status, "Expected Status Code 200 - Actual Code was: " + status);
+    }
+
+    private HttpResponse<String> resetStatements() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/admin/sql-statements"))
+                .DELETE()
+                .header("X-Admin-Token", "secret")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> send(String uri, String method) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(uri))
+                .method(method, HttpRequest.BodyPublishers.noBody())
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
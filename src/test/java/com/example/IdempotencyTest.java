@@ -0,0 +1,149 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.entity.Account;
+import com.example.entity.Message;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class IdempotencyTest {
+    ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * Sending POST localhost:8080/messages twice with the same Idempotency-Key
+     *
+     * Expected Response:
+     *  The retry replays the first message with an Idempotent-Replayed header, and only one message is created
+     */
+    @Test
+    public void retryCreateMessageReplaysResponse() throws IOException, InterruptedException {
+        HttpResponse<String> first = webClient.send(postMessage("key-1", "hello"), HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> retry = webClient.send(postMessage("key-1", "hello"), HttpResponse.BodyHandlers.ofString());
+
+        Assertions.assertEquals(200, retry.statusCode());
+        Assertions.assertEquals(objectMapper.readValue(first.body(), Message.class),
+                objectMapper.readValue(retry.body(), Message.class));
+        Assertions.assertTrue(first.headers().firstValue("Idempotent-Replayed").isEmpty());
+        Assertions.assertEquals("true", retry.headers().firstValue("Idempotent-Replayed").orElse(null));
+        Assertions.assertEquals(2, messagesOf(9999).size());
+
+        HttpResponse<String> other = webClient.send(postMessage("key-2", "hello"), HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, other.statusCode());
+        Assertions.assertEquals(3, messagesOf(9999).size());
+    }
+
+    /**
+     * Sending POST localhost:8080/messages with a key already used for a different message
+     *
+     * Expected Response:
+     *  Status Code: 422
+     */
+    @Test
+    public void reuseKeyForDifferentMessage() throws IOException, InterruptedException {
+        Assertions.assertEquals(200, webClient.send(postMessage("key-1", "hello"), HttpResponse.BodyHandlers.ofString()).statusCode());
+        HttpResponse<String> reused = webClient.send(postMessage("key-1", "goodbye"), HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(422, reused.statusCode());
+        Assertions.assertEquals(2, messagesOf(9999).size());
+    }
+
+    /**
+     * Sending eight POST localhost:8080/messages requests with the same key at once
+     *
+     * Expected Response:
+     *  Every request gets the same message, and only one message is created
+     */
+    @Test
+    public void concurrentDuplicatesShareOneCreate() throws IOException, InterruptedException {
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            responses.add(webClient.sendAsync(postMessage("key-1", "hello"), HttpResponse.BodyHandlers.ofString()));
+        }
+        Message expected = null;
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            Message message = objectMapper.readValue(response.join().body(), Message.class);
+            if (expected == null) {
+                expected = message;
+            }
+            Assertions.assertEquals(expected, message);
+        }
+        Assertions.assertEquals(2, messagesOf(9999).size());
+    }
+
+    /**
+     * Sending POST localhost:8080/register twice with the same Idempotency-Key
+     *
+     * Expected Response:
+     *  The retry gets the registered account instead of a 409
+     */
+    @Test
+    public void retryRegisterReplaysResponse() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\": \"retrier\", \"password\": \"password\"}"))
+                .header("Content-Type", "application/json")
+                .header("Idempotency-Key", "register-1")
+                .build();
+        HttpResponse<String> first = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> retry = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        Assertions.assertEquals(200, first.statusCode());
+        Assertions.assertEquals(200, retry.statusCode());
+        Assertions.assertEquals(objectMapper.readValue(first.body(), Account.class),
+                objectMapper.readValue(retry.body(), Account.class));
+    }
+
+    private HttpRequest postMessage(String idempotencyKey, String text) {
+        String json = "{\"postedBy\":9999,\"messageText\": \"" + text + "\",\"timePostedEpoch\": 1669947792}";
+        return HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .header("Content-Type", "application/json")
+                .header("Idempotency-Key", idempotencyKey)
+                .build();
+    }
+
+    private List<Message> messagesOf(int accountId) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/" + accountId + "/messages"))
+                .build();
+        return objectMapper.readValue(webClient.send(request, HttpResponse.BodyHandlers.ofString()).body(),
+                new TypeReference<List<Message>>(){});
+    }
+}
@@ -0,0 +1,143 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.entity.Message;
+import com.example.metrics.SqlStatementMetrics;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class LatestMessagesTest {
+    ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * Sending GET localhost:8080/messages?latest=2 before and after creating a message, with the statement
+     * counters reset first
+     *
+     * Expected Response:
+     *  The newest messages first, including the new one, and no SQL statement for either read
+     */
+    @Test
+    public void latestMessagesComeFromMemory() throws IOException, InterruptedException {
+        Assertions.assertEquals(List.of(new Message(9999, 9999, "test message 1", 1669947792L),
+                new Message(9997, 9997, "test message 2", 1669947792L)), latest(2));
+
+        Message created = postMessage(9998, "newest");
+        app.getBean(SqlStatementMetrics.class).reset();
+        Assertions.assertEquals(List.of(created, new Message(9999, 9999, "test message 1", 1669947792L)), latest(2));
+        Assertions.assertEquals(4, latest(10).size());
+
+        HttpResponse<String> statements = send("http://localhost:8080/actuator/datasource", "GET", null);
+        Assertions.assertEquals(0, objectMapper.readTree(statements.body()).get("totalStatements").asInt());
+    }
+
+    /**
+     * Sending PATCH and DELETE localhost:8080/messages/{messageId}, then GET localhost:8080/messages?latest=3
+     *
+     * Expected Response:
+     *  The updated text, and without the deleted message
+     */
+    @Test
+    public void latestMessagesFollowUpdatesAndDeletes() throws IOException, InterruptedException {
+        send("http://localhost:8080/messages/9999", "PATCH", "{\"messageText\":\"updated\"}");
+        send("http://localhost:8080/messages/9997", "DELETE", null);
+
+        Assertions.assertEquals(List.of(new Message(9999, 9999, "updated", 1669947792L),
+                new Message(9996, 9996, "test message 3", 1669947792L)), latest(3));
+    }
+
+    /**
+     * Sending GET localhost:8080/messages?latest=0 and ?latest=1001
+     *
+     * Expected Response:
+     *  Status Code: 400 for both
+     */
+    @Test
+    public void latestCountOutOfRange() throws IOException, InterruptedException {
+        Assertions.assertEquals(400, send("http://localhost:8080/messages?latest=0", "GET", null).statusCode());
+        Assertions.assertEquals(400, send("http://localhost:8080/messages?latest=1001", "GET", null).statusCode());
+    }
+
+    /**
+     * With a ring of 2, deleting one of the two messages it holds while older messages exist
+     *
+     * Expected Response:
+     *  GET localhost:8080/messages?latest=2 still returns the two newest messages, read from the store by a
+     *  single query that sorts and limits in the database
+     */
+    @Test
+    public void shortRingFallsBackToStore() throws IOException, InterruptedException {
+        SpringApplication.exit(app);
+        app = SpringApplication.run(SocialMediaApp.class, "--socialmedia.latest.capacity=2");
+        Thread.sleep(500);
+
+        send("http://localhost:8080/messages/9999", "DELETE", null);
+        app.getBean(SqlStatementMetrics.class).reset();
+        Assertions.assertEquals(List.of(new Message(9997, 9997, "test message 2", 1669947792L),
+                new Message(9996, 9996, "test message 3", 1669947792L)), latest(2));
+
+        JsonNode statements = objectMapper.readTree(
+                send("http://localhost:8080/actuator/datasource", "GET", null).body()).get("statements");
+        Assertions.assertEquals(1, statements.size(), statements.toString());
+        String sql = statements.get(0).get("sql").asText().toLowerCase();
+        Assertions.assertTrue(sql.contains("order by") && sql.contains("desc") && sql.contains("limit"), sql);
+    }
+
+    private List<Message> latest(int count) throws IOException, InterruptedException {
+        HttpResponse<String> response = send("http://localhost:8080/messages?latest=" + count, "GET", null);
+        Assertions.assertEquals(200, response.statusCode(), "Actual=" + response.body());
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+
+    private Message postMessage(int postedBy, String text) throws IOException, InterruptedException {
+        String json = "{\"postedBy\":" + postedBy + ",\"messageText\": \"" + text + "\",\"timePostedEpoch\": 1669947792}";
+        HttpResponse<String> response = send("http://localhost:8080/messages", "POST", json);
+        Assertions.assertEquals(200, response.statusCode(), "Actual=" + response.body());
+        return objectMapper.readValue(response.body(), Message.class);
+    }
+
+    private HttpResponse<String> send(String uri, String method, String json) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create(uri))
+                .method(method, json == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(json));
+        if (json != null) {
+            request.header("Content-Type", "application/json");
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
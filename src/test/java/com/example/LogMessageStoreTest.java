@@ -0,0 +1,154 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.example.entity.Message;
+import com.example.repository.LogMessageStore;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class LogMessageStoreTest {
+    ConfigurableApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Path logDir;
+    String[] args;
+
+    /**
+     * Before every test, start the app with messages in a fresh append-only log in a temporary directory.
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws IOException, InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        logDir = Files.createTempDirectory("socialmedia-log-store");
+        args = new String[] {
+                "--socialmedia.message-store=log",
+                "--socialmedia.log-store.dir=" + logDir};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * Creating, updating and deleting messages, then restarting the app on the same log. A partly written
+     * record at the end of the log, as left by a crash mid-append, is dropped on recovery.
+     *
+     * Expected Response:
+     *  After the restart, GET localhost:8080/messages returns the surviving messages with their latest text,
+     *  and new messages do not reuse ids
+     */
+    @Test
+    public void recoverAfterRestart() throws IOException, InterruptedException {
+        Message first = postMessage(9999, "first");
+        Message second = postMessage(9998, "second");
+        Message third = postMessage(9999, "third");
+        Assertions.assertEquals(200, patch(first.getMessageId(), "first, edited").statusCode());
+        Assertions.assertEquals("1", delete(third.getMessageId()).body());
+
+        restart(new byte[] {0, 0, 0, 40, 1, 2, 3});
+
+        Message edited = new Message(first.getMessageId(), 9999, "first, edited", 1669947792L);
+        Assertions.assertEquals(List.of(edited, second), getMessages("/messages"));
+        Assertions.assertEquals(List.of(edited), getMessages("/accounts/9999/messages"));
+        Assertions.assertEquals("", get("/messages/" + third.getMessageId()).body());
+
+        Message fourth = postMessage(9997, "fourth");
+        Assertions.assertTrue(fourth.getMessageId() > third.getMessageId(), "Actual=" + fourth);
+    }
+
+    /**
+     * Compaction drops overwritten records and tombstones, and keeps the id sequence past deleted messages.
+     */
+    @Test
+    public void compactKeepsLiveMessages() throws IOException, InterruptedException {
+        Message kept = postMessage(9999, "kept");
+        for (int i = 0; i < 20; i++) {
+            Assertions.assertEquals(200, patch(kept.getMessageId(), "kept " + i).statusCode());
+        }
+        Message deleted = postMessage(9998, "deleted");
+        delete(deleted.getMessageId());
+
+        long before = Files.size(logDir.resolve("messages.log"));
+        app.getBean(LogMessageStore.class).compact();
+        long after = Files.size(logDir.resolve("messages.log"));
+        Assertions.assertTrue(after < before / 5, "Before=" + before + ", After=" + after);
+
+        Message expected = new Message(kept.getMessageId(), 9999, "kept 19", 1669947792L);
+        Assertions.assertEquals(List.of(expected), getMessages("/messages"));
+
+        restart(new byte[0]);
+        Assertions.assertEquals(List.of(expected), getMessages("/messages"));
+        Assertions.assertEquals(List.of(), getMessages("/accounts/9998/messages"));
+        Assertions.assertTrue(postMessage(9998, "again").getMessageId() > deleted.getMessageId());
+    }
+
+    private void restart(byte[] tornTail) throws IOException, InterruptedException {
+        SpringApplication.exit(app);
+        Files.write(logDir.resolve("messages.log"), tornTail, StandardOpenOption.APPEND);
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    private Message postMessage(int postedBy, String text) throws IOException, InterruptedException {
+        String json = "{\"postedBy\":" + postedBy + ",\"messageText\": \"" + text + "\",\"timePostedEpoch\": 1669947792}";
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode(), "Actual=" + response.body());
+        return objectMapper.readValue(response.body(), Message.class);
+    }
+
+    private HttpResponse<String> patch(int messageId, String text) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/" + messageId))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"messageText\": \"" + text + "\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> delete(int messageId) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/" + messageId))
+                .DELETE()
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private List<Message> getMessages(String path) throws IOException, InterruptedException {
+        return objectMapper.readValue(get(path).body(), new TypeReference<List<Message>>(){});
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,157 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.archive.MessageSegment;
+import com.example.entity.Message;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class MessageArchiveTest {
+    ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Path archiveDir;
+
+    /**
+     * Before every test, reset the database and restart the app with archiving into a temporary directory,
+     * two messages per compressed block so a segment holds several blocks.
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws IOException, InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        archiveDir = Files.createTempDirectory("socialmedia-archive");
+        String[] args = new String[] {
+                "--socialmedia.archive.enabled=true",
+                "--socialmedia.archive.dir=" + archiveDir,
+                "--socialmedia.archive.block-messages=2",
+                "--socialmedia.admin.token=secret"};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * Archiving the sample messages, then reading them back by id and through the user's timeline.
+     *
+     * Expected Response:
+     *  POST /admin/archive: 200, the three sample messages and the older one in one segment
+     *  GET /messages: only messages still in the table
+     *  GET /messages/{id} and /accounts/{id}/messages: archived messages as before, merged with new ones
+     */
+    @Test
+    public void archivedMessagesStillReadable() throws IOException, InterruptedException {
+        Message recent = postMessage(9999, "recent message", 1700000000L);
+        Message older = postMessage(9997, "older message", 1600000000L);
+
+        HttpResponse<String> archived = archive(1669947793L, "secret");
+        Assertions.assertEquals(200, archived.statusCode());
+        JsonNode run = objectMapper.readTree(archived.body());
+        Assertions.assertEquals(1, run.get("segments").asInt());
+        Assertions.assertEquals(4, run.get("messages").asInt());
+        Assertions.assertEquals(1, Files.list(archiveDir).filter(p -> p.toString().endsWith(".seg")).count());
+
+        Assertions.assertEquals(List.of(recent), getMessages("/messages"));
+
+        Message archivedMessage = objectMapper.readValue(get("/messages/9999").body(), Message.class);
+        Assertions.assertEquals(new Message(9999, 9999, "test message 1", 1669947792L), archivedMessage);
+        Assertions.assertEquals(older, objectMapper.readValue(get("/messages/" + older.getMessageId()).body(), Message.class));
+        Assertions.assertEquals("", get("/messages/12345").body());
+
+        Assertions.assertEquals(List.of(recent, new Message(9999, 9999, "test message 1", 1669947792L)),
+                getMessages("/accounts/9999/messages"));
+        Assertions.assertEquals(List.of(older, new Message(9997, 9997, "test message 2", 1669947792L)),
+                getMessages("/accounts/9997/messages"));
+        Assertions.assertEquals(List.of(), getMessages("/accounts/9998/messages"));
+    }
+
+    /**
+     * POST /admin/archive needs the admin token.
+     */
+    @Test
+    public void archiveRequiresAdminToken() throws IOException, InterruptedException {
+        Assertions.assertEquals(403, archive(1669947793L, "wrong").statusCode());
+        Assertions.assertEquals(3, getMessages("/messages").size());
+    }
+
+    /**
+     * A run that wrote its segment but crashed before deleting the messages leaves a .seg.pending file; the
+     * next startup deletes those messages from the table and renames the segment into place.
+     *
+     * Expected Response:
+     *  GET /messages: the archived message is gone from the table
+     *  GET /accounts/9999/messages and /accounts/9999/stats: the message appears and is counted once
+     */
+    @Test
+    public void pendingSegmentCompletedAtStartup() throws IOException, InterruptedException {
+        Message sample = new Message(9999, 9999, "test message 1", 1669947792L);
+        SpringApplication.exit(app);
+        Path pending = archiveDir.resolve("messages-crashed.seg.pending");
+        MessageSegment.write(pending, List.of(sample), 2);
+        app = SpringApplication.run(SocialMediaApp.class,
+                "--socialmedia.archive.enabled=true", "--socialmedia.archive.dir=" + archiveDir);
+        Thread.sleep(500);
+
+        Assertions.assertFalse(Files.exists(pending));
+        Assertions.assertTrue(Files.exists(archiveDir.resolve("messages-crashed.seg")));
+        Assertions.assertFalse(getMessages("/messages").contains(sample));
+        Assertions.assertEquals(List.of(sample), getMessages("/accounts/9999/messages"));
+        Assertions.assertEquals(1, objectMapper.readTree(get("/accounts/9999/stats").body()).get("messageCount").asInt());
+    }
+
+    private HttpResponse<String> archive(long before, String token) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/admin/archive?before=" + before))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .header("X-Admin-Token", token)
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private Message postMessage(int postedBy, String text, long timePostedEpoch) throws IOException, InterruptedException {
+        String json = "{\"postedBy\":" + postedBy + ",\"messageText\": \"" + text + "\",\"timePostedEpoch\": "
+                + timePostedEpoch + "}";
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode(), "Actual=" + response.body());
+        return objectMapper.readValue(response.body(), Message.class);
+    }
+
+    private List<Message> getMessages(String path) throws IOException, InterruptedException {
+        return objectMapper.readValue(get(path).body(), new TypeReference<List<Message>>(){});
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,125 @@
+package com.example;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.entity.Message;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+
+public class MessageContentNegotiationTest {
+    ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages with Accept: application/x-jackson-smile
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: Smile representation of the list of messages
+     */
+    @Test
+    public void getAllMessagesAsSmile() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .header("Accept", "application/x-jackson-smile")
+                .build();
+        HttpResponse<byte[]> response = webClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        int status = response.statusCode();
+        Assertions.assertEquals(200, status, "Expected Status Code 200 - Actual Code was: " + status);
+        Assertions.assertTrue(response.headers().firstValue("Content-Type").orElse("").startsWith("application/x-jackson-smile"));
+        List<Message> actualResult = new SmileMapper().readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assertions.assertEquals(3, actualResult.size());
+        Assertions.assertTrue(actualResult.contains(new Message(9999, 9999, "test message 1", 1669947792L)));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/9999/messages with Accept: application/cbor
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: CBOR representation of the list of messages
+     */
+    @Test
+    public void getAllMessagesFromUserAsCbor() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/9999/messages"))
+                .header("Accept", "application/cbor")
+                .build();
+        HttpResponse<byte[]> response = webClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        int status = response.statusCode();
+        Assertions.assertEquals(200, status, "Expected Status Code 200 - Actual Code was: " + status);
+        List<Message> actualResult = new CBORMapper().readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assertions.assertEquals(List.of(new Message(9999, 9999, "test message 1", 1669947792L)), actualResult);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages with Accept-Encoding: gzip once the list is larger
+     * than the compression threshold.
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Content-Encoding: gzip
+     *  Response Body: gzipped JSON representation of the list of messages
+     */
+    @Test
+    public void getAllMessagesGzipAboveThreshold() throws IOException, InterruptedException {
+        for (int i = 0; i < 40; i++) {
+            String json = "{\"postedBy\":9999,\"messageText\": \"compressible message number " + i + "\",\"timePostedEpoch\": 1669947792}";
+            HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString(json))
+                    .header("Content-Type", "application/json")
+                    .build();
+            webClient.send(postMessageRequest, HttpResponse.BodyHandlers.discarding());
+        }
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .header("Accept-Encoding", "gzip")
+                .build();
+        HttpResponse<byte[]> response = webClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        int status = response.statusCode();
+        Assertions.assertEquals(200, status, "Expected Status Code 200 - Actual Code was: " + status);
+        Assertions.assertEquals("gzip", response.headers().firstValue("Content-Encoding").orElse(null));
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(response.body()))) {
+            List<Message> actualResult = objectMapper.readValue(in, new TypeReference<List<Message>>(){});
+            Assertions.assertEquals(43, actualResult.size());
+        }
+    }
+}
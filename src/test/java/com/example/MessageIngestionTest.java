@@ -0,0 +1,118 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.entity.Message;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class MessageIngestionTest {
+    ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app with write-behind ingestion, and create a new
+     * webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {"--socialmedia.ingest.mode=ASYNC"};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages with valid message credentials
+     *
+     * Expected Response:
+     *  Status Code: 200 after the group commit
+     *  Response Body: JSON representation of message object
+     */
+    @Test
+    public void createMessageDurableAck() throws IOException, InterruptedException {
+        HttpResponse<String> response = postMessage("hello message", false);
+        int status = response.statusCode();
+        Assertions.assertEquals(200, status, "Expected Status Code 200 - Actual Code was: " + status);
+        Message expectedResult = new Message(1, 9999, "hello message", Long.valueOf(1669947792));
+        Message actualResult = objectMapper.readValue(response.body(), Message.class);
+        Assertions.assertEquals(expectedResult, actualResult, "Expected="+expectedResult + ", Actual="+actualResult);
+
+        HttpRequest metricsRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/actuator/metrics/messages.ingest.batch.size"))
+                .build();
+        HttpResponse<String> metrics = webClient.send(metricsRequest, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, metrics.statusCode());
+        JsonNode count = objectMapper.readTree(metrics.body()).get("measurements").get(0);
+        Assertions.assertEquals("COUNT", count.get("statistic").asText());
+        Assertions.assertEquals(1.0, count.get("value").asDouble());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages with "Prefer: respond-async"
+     *
+     * Expected Response:
+     *  Status Code: 202, and the message shows up in GET localhost:8080/messages shortly after
+     */
+    @Test
+    public void createMessageAcceptedForProcessing() throws IOException, InterruptedException {
+        HttpResponse<String> response = postMessage("queued message", true);
+        int status = response.statusCode();
+        Assertions.assertEquals(202, status, "Expected Status Code 202 - Actual Code was: " + status);
+
+        Thread.sleep(200);
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .build();
+        HttpResponse<String> listResponse = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        List<Message> messages = objectMapper.readValue(listResponse.body(), new TypeReference<List<Message>>(){});
+        Assertions.assertTrue(messages.contains(new Message(1, 9999, "queued message", 1669947792L)), "Actual=" + messages);
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages with empty message
+     *
+     * Expected Response:
+     *  Status Code: 400, without touching the queue
+     */
+    @Test
+    public void createMessageMessageTextBlank() throws IOException, InterruptedException {
+        HttpResponse<String> response = postMessage("", true);
+        int status = response.statusCode();
+        Assertions.assertEquals(400, status, "Expected Status Code 400 - Actual Code was: " + status);
+    }
+
+    private HttpResponse<String> postMessage(String text, boolean respondAsync) throws IOException, InterruptedException {
+        String json = "{\"postedBy\":9999,\"messageText\": \"" + text + "\",\"timePostedEpoch\": 1669947792}";
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .header("Content-Type", "application/json");
+        if (respondAsync) {
+            builder.header("Prefer", "respond-async");
+        }
+        return webClient.send(builder.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
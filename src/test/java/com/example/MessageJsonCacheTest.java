@@ -0,0 +1,135 @@
+package com.example;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.entity.Message;
+import com.example.service.MessageJsonCache;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class MessageJsonCacheTest {
+    ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * Reading all messages fills the cache, and a PATCH to localhost:8080/messages/9999 must not leave the old
+     * encoding behind in the next GET localhost:8080/messages.
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of the updated list of messages
+     */
+    @Test
+    public void getAllMessagesAfterUpdateServesNewText() throws IOException, InterruptedException {
+        HttpRequest getRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .build();
+        HttpResponse<String> response = webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode());
+        Assertions.assertEquals("application/json", response.headers().firstValue("Content-Type").orElse(null));
+        Assertions.assertEquals(3, app.getBean(MessageJsonCache.class).size());
+
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/9999"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"messageText\": \"updated message\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assertions.assertEquals(200, webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        response = webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+        List<Message> actualResult = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assertions.assertTrue(actualResult.contains(new Message(9999, 9999, "updated message", 1669947792L)),
+                "Actual=" + actualResult);
+    }
+
+    /**
+     * With room for two encodings, encoding three messages evicts the least recently used one, and the newest
+     * messages are still cached rather than the first ones encoded.
+     */
+    @Test
+    public void fullCacheEvictsLeastRecentlyUsed() throws Exception {
+        SpringApplication.exit(app);
+        app = SpringApplication.run(SocialMediaApp.class, "--socialmedia.message-json-cache.max-entries=2");
+        MessageJsonCache cache = app.getBean(MessageJsonCache.class);
+        Message first = new Message(1, 9999, "first", 1669947792L);
+        Message second = new Message(2, 9999, "second", 1669947792L);
+        Message third = new Message(3, 9999, "third", 1669947792L);
+
+        byte[] firstBytes = cache.bytesFor(first);
+        byte[] secondBytes = cache.bytesFor(second);
+        Assertions.assertSame(firstBytes, cache.bytesFor(first));
+        byte[] thirdBytes = cache.bytesFor(third);
+
+        Assertions.assertEquals(2, cache.size());
+        Assertions.assertSame(firstBytes, cache.bytesFor(first));
+        Assertions.assertSame(thirdBytes, cache.bytesFor(third));
+        Assertions.assertNotSame(secondBytes, cache.bytesFor(second));
+    }
+
+    /**
+     * Several threads encoding overlapping messages through a cache of 100 each get the right bytes, and the
+     * cache stays close to its size.
+     */
+    @Test
+    public void concurrentReadsStayCorrectAndBounded() throws Exception {
+        SpringApplication.exit(app);
+        app = SpringApplication.run(SocialMediaApp.class, "--socialmedia.message-json-cache.max-entries=100");
+        MessageJsonCache cache = app.getBean(MessageJsonCache.class);
+
+        List<CompletableFuture<Void>> readers = new ArrayList<>();
+        for (int thread = 0; thread < 8; thread++) {
+            int seed = thread;
+            readers.add(CompletableFuture.runAsync(() -> {
+                for (int i = 0; i < 5000; i++) {
+                    int messageId = (i * 31 + seed) % 500;
+                    Message message = new Message(messageId, 9999, "message " + messageId, 1669947792L);
+                    try {
+                        Assertions.assertEquals(message, objectMapper.readValue(cache.bytesFor(message), Message.class));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            }));
+        }
+        for (CompletableFuture<Void> reader : readers) {
+            reader.get();
+        }
+        Assertions.assertTrue(cache.size() <= 100 + 8, "Actual=" + cache.size());
+    }
+}
@@ -0,0 +1,223 @@
+package com.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.entity.Message;
+import com.example.event.MessageCreatedEvent;
+import com.example.service.MessageStreamService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class MessageStreamTest {
+    ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * Subscribing to GET localhost:8080/messages/stream?postedBy=9999, then posting one message as user 9998 and one
+     * as user 9999.
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: an event stream whose first message event is the message posted by 9999
+     */
+    @Test
+    @Timeout(value = 10, unit = TimeUnit.SECONDS)
+    public void streamMessagesFilteredByPostedBy() throws Exception {
+        HttpRequest streamRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/stream?postedBy=9999"))
+                .header("Accept", "text/event-stream")
+                .build();
+        HttpResponse<Stream<String>> streamResponse = webClient.send(streamRequest, HttpResponse.BodyHandlers.ofLines());
+        Assertions.assertEquals(200, streamResponse.statusCode());
+        Iterator<String> lines = streamResponse.body().iterator();
+
+        postMessage("{\"postedBy\":9998,\"messageText\": \"not for this stream\",\"timePostedEpoch\": 1669947792}");
+        postMessage("{\"postedBy\":9999,\"messageText\": \"streamed message\",\"timePostedEpoch\": 1669947793}");
+
+        String data = null;
+        while (data == null && lines.hasNext()) {
+            String line = lines.next();
+            if (line.startsWith("data:")) {
+                data = line.substring("data:".length());
+            }
+        }
+        Message expectedResult = new Message(2, 9999, "streamed message", 1669947793L);
+        Message actualResult = objectMapper.readValue(data, Message.class);
+        Assertions.assertEquals(expectedResult, actualResult, "Expected="+expectedResult + ", Actual="+actualResult);
+    }
+
+    /**
+     * With the DISCONNECT overflow policy, one subscriber that never reads its stream and one that keeps up.
+     * Large messages are published until the stalled subscriber's socket and then its buffer are full.
+     *
+     * Expected Response:
+     *  The stalled subscriber is disconnected and its stream ends, while the other subscriber receives every
+     *  message, including one published after the disconnect
+     */
+    @Test
+    @Timeout(value = 60, unit = TimeUnit.SECONDS)
+    public void slowSubscriberDisconnectedOthersKeepReceiving() throws Exception {
+        SpringApplication.exit(app);
+        app = SpringApplication.run(SocialMediaApp.class,
+                "--socialmedia.stream.overflow-policy=DISCONNECT", "--socialmedia.stream.buffer-size=4");
+        MessageStreamService streams = app.getBean(MessageStreamService.class);
+
+        try (Socket stalled = new Socket()) {
+            stalled.setReceiveBufferSize(4096);
+            stalled.connect(new InetSocketAddress("localhost", 8080));
+            // Never read until the end, and Connection: close so the socket closes when the stream completes.
+            OutputStream request = stalled.getOutputStream();
+            request.write(("GET /messages/stream HTTP/1.1\r\nHost: localhost\r\nAccept: text/event-stream\r\n"
+                    + "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            request.flush();
+
+            BlockingQueue<Integer> received = new LinkedBlockingQueue<>();
+            HttpRequest streamRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages/stream"))
+                    .header("Accept", "text/event-stream")
+                    .build();
+            HttpResponse<Stream<String>> keepingUp = webClient.send(streamRequest, HttpResponse.BodyHandlers.ofLines());
+            Thread reader = new Thread(() -> keepingUp.body()
+                    .filter(line -> line.startsWith("id:"))
+                    .forEach(line -> received.add(Integer.parseInt(line.substring("id:".length()).trim()))));
+            reader.setDaemon(true);
+            reader.start();
+            while (streams.getSubscriberCount() < 2) {
+                Thread.sleep(10);
+            }
+
+            // Each message waits for the subscriber that keeps up, so only the stalled one can fall behind.
+            String text = "x".repeat(64 * 1024);
+            int messageId = 100000;
+            while (streams.getSubscriberCount() == 2) {
+                messageId++;
+                streams.onMessageCreated(new MessageCreatedEvent(new Message(messageId, 9999, text, 1669947792L)));
+                Assertions.assertEquals(messageId, received.poll(10, TimeUnit.SECONDS));
+            }
+            Assertions.assertEquals(1, streams.getSubscriberCount());
+
+            messageId++;
+            streams.onMessageCreated(new MessageCreatedEvent(new Message(messageId, 9999, "after the disconnect", 1669947792L)));
+            Assertions.assertEquals(messageId, received.poll(10, TimeUnit.SECONDS));
+
+            // The stalled stream ends once what was already written reaches it.
+            InputStream response = stalled.getInputStream();
+            byte[] discard = new byte[64 * 1024];
+            while (response.read(discard) != -1) {
+                // drain
+            }
+        }
+    }
+
+    /**
+     * With one sender thread, a subscriber that stops reading while another keeps up, and messages too large
+     * to sit in the socket buffers
+     *
+     * Expected Response:
+     *  The stalled subscriber's send times out and it is disconnected, and the subscriber that keeps up still
+     *  receives every message on an added sender thread
+     */
+    @Test
+    @Timeout(value = 60, unit = TimeUnit.SECONDS)
+    public void blockedSendDoesNotStarveOtherSubscribers() throws Exception {
+        SpringApplication.exit(app);
+        app = SpringApplication.run(SocialMediaApp.class, "--socialmedia.stream.sender-threads=1",
+                "--socialmedia.stream.send-timeout-millis=500", "--socialmedia.stream.watchdog-millis=100");
+        MessageStreamService streams = app.getBean(MessageStreamService.class);
+
+        try (Socket stalled = new Socket()) {
+            stalled.setReceiveBufferSize(4096);
+            stalled.connect(new InetSocketAddress("localhost", 8080));
+            OutputStream request = stalled.getOutputStream();
+            request.write(("GET /messages/stream HTTP/1.1\r\nHost: localhost\r\nAccept: text/event-stream\r\n"
+                    + "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            request.flush();
+
+            BlockingQueue<Integer> received = new LinkedBlockingQueue<>();
+            HttpRequest streamRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages/stream"))
+                    .header("Accept", "text/event-stream")
+                    .build();
+            HttpResponse<Stream<String>> keepingUp = webClient.send(streamRequest, HttpResponse.BodyHandlers.ofLines());
+            Thread reader = new Thread(() -> keepingUp.body()
+                    .filter(line -> line.startsWith("id:"))
+                    .forEach(line -> received.add(Integer.parseInt(line.substring("id:".length()).trim()))));
+            reader.setDaemon(true);
+            reader.start();
+            while (streams.getSubscriberCount() < 2) {
+                Thread.sleep(10);
+            }
+
+            String text = "x".repeat(64 * 1024);
+            int messageId = 100000;
+            while (streams.getSubscriberCount() == 2) {
+                messageId++;
+                streams.onMessageCreated(new MessageCreatedEvent(new Message(messageId, 9999, text, 1669947792L)));
+                Assertions.assertEquals(messageId, received.poll(10, TimeUnit.SECONDS));
+            }
+            for (int i = 0; i < 3; i++) {
+                messageId++;
+                streams.onMessageCreated(new MessageCreatedEvent(new Message(messageId, 9999, text, 1669947792L)));
+                Assertions.assertEquals(messageId, received.poll(10, TimeUnit.SECONDS));
+            }
+
+            InputStream response = stalled.getInputStream();
+            byte[] discard = new byte[64 * 1024];
+            while (response.read(discard) != -1) {
+                // drain
+            }
+        }
+    }
+
+    private void postMessage(String json) throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode());
+    }
+}
@@ -0,0 +1,147 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.entity.Message;
+import com.example.metrics.SqlStatementMetrics;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class MessageTimeRangeTest {
+    ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    List<Message> posted;
+
+    /**
+     * Before every test, reset the database, restart the app, and post ten messages one second apart,
+     * alternating between two users.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws IOException, InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+        posted = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            posted.add(postMessage(i % 2 == 0 ? 9999 : 9998, 1000L + i));
+        }
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?since=1002&until=1006
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the messages posted at 1002 up to 1005, oldest first
+     */
+    @Test
+    public void getMessagesInRange() throws IOException, InterruptedException {
+        Assertions.assertEquals(posted.subList(2, 6), getMessages("/messages?since=1002&until=1006"));
+        Assertions.assertEquals(posted.subList(8, 10), getMessages("/messages?since=1008&until=2000"));
+        Assertions.assertEquals(posted.subList(0, 2), getMessages("/messages?since=0&until=1002"));
+    }
+
+    /**
+     * Pages of size three walk through the range in order.
+     */
+    @Test
+    public void getMessagesInRangeByPage() throws IOException, InterruptedException {
+        Assertions.assertEquals(posted.subList(0, 3), getMessages("/messages?since=1000&until=2000&size=3"));
+        Assertions.assertEquals(posted.subList(3, 6), getMessages("/messages?since=1000&until=2000&size=3&page=1"));
+        Assertions.assertEquals(posted.subList(9, 10), getMessages("/messages?since=1000&until=2000&size=3&page=3"));
+        Assertions.assertEquals(List.of(), getMessages("/messages?since=1000&until=2000&size=3&page=4"));
+        Assertions.assertEquals(400, get("/messages?size=0").statusCode());
+        Assertions.assertEquals(400, get("/messages?page=-1").statusCode());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/9998/messages?since=1002&until=1008&size=2
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the user's first two messages in the range
+     */
+    @Test
+    public void getUserMessagesInRange() throws IOException, InterruptedException {
+        Assertions.assertEquals(List.of(posted.get(3), posted.get(5)),
+                getMessages("/accounts/9998/messages?since=1002&until=1008&size=2"));
+        Assertions.assertEquals(List.of(posted.get(7)),
+                getMessages("/accounts/9998/messages?since=1002&until=1008&size=2&page=1"));
+    }
+
+    /**
+     * The range queries the app actually issues are index range scans, sorted by the index, not table scans.
+     * Each request's SQL is taken from the statement metrics and explained with the request's parameters.
+     */
+    @Test
+    public void rangeQueriesUseIndexes() throws IOException, InterruptedException {
+        String global = explainQueryOf("/messages?since=1002&until=1006", 1002L, 1006L, 100);
+        Assertions.assertTrue(global.contains("/* PUBLIC.MESSAGE_TIME_IDX: TIMEPOSTEDEPOCH >="), global);
+
+        String perUser = explainQueryOf("/accounts/9998/messages?since=1002&until=1006", 9998, 1002L, 1006L, 100);
+        Assertions.assertTrue(perUser.contains("/* PUBLIC.MESSAGE_POSTEDBY_TIME_IDX:"), perUser);
+    }
+
+    /**
+     * Runs a request, then explains the one query it ran with the given parameters.
+     */
+    private String explainQueryOf(String path, Object... parameters) throws IOException, InterruptedException {
+        SqlStatementMetrics metrics = app.getBean(SqlStatementMetrics.class);
+        metrics.reset();
+        getMessages(path);
+        List<SqlStatementMetrics.StatementStats> statements = metrics.getStatements();
+        Assertions.assertEquals(1, statements.size(), path);
+        String sql = statements.get(0).getSql();
+        Assertions.assertEquals(parameters.length, sql.length() - sql.replace("?", "").length(), sql);
+        return app.getBean(JdbcTemplate.class).queryForObject("explain " + sql, String.class, parameters);
+    }
+
+    private Message postMessage(int postedBy, long timePostedEpoch) throws IOException, InterruptedException {
+        String json = "{\"postedBy\":" + postedBy + ",\"messageText\": \"at " + timePostedEpoch + "\",\"timePostedEpoch\": " + timePostedEpoch + "}";
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode(), "Actual=" + response.body());
+        return objectMapper.readValue(response.body(), Message.class);
+    }
+
+    private List<Message> getMessages(String path) throws IOException, InterruptedException {
+        HttpResponse<String> response = get(path);
+        Assertions.assertEquals(200, response.statusCode(), "Actual=" + response.body());
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,208 @@
+package com.example;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.example.entity.Message;
+import com.example.repository.MessageStore;
+import com.example.service.OffHeapMessageCache;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+
+public class OffHeapMessageCacheTest {
+    ConfigurableApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, start the app with an off-heap cache small enough to overflow: 8 messages.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {
+                "--socialmedia.offheap.enabled=true",
+                "--socialmedia.offheap.capacity=8",
+                "--socialmedia.offheap.text-bytes=65536"};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * Messages loaded at startup and created later are served from the cache, as JSON and as CBOR, with
+     * the text escaped the way Jackson escapes it.
+     */
+    @Test
+    public void serveMessagesFromCache() throws IOException, InterruptedException {
+        Message seed = new Message(9999, 9999, "test message 1", 1669947792L);
+        Message created = postMessage(9999, "say \\\"hi\\\" \\\\ café ✓");
+        Assertions.assertEquals("say \"hi\" \\ café ✓", created.getMessageText());
+
+        double hitsBefore = hits();
+        Assertions.assertEquals(seed, objectMapper.readValue(get("/messages/9999").body(), Message.class));
+        Assertions.assertEquals(created, objectMapper.readValue(
+                get("/messages/" + created.getMessageId()).body(), Message.class));
+        Assertions.assertEquals(List.of(created, seed), getMessages("/accounts/9999/messages"));
+        Assertions.assertEquals(3, hits() - hitsBefore);
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/" + created.getMessageId()))
+                .header("Accept", "application/cbor")
+                .build();
+        byte[] cbor = webClient.send(request, HttpResponse.BodyHandlers.ofByteArray()).body();
+        Assertions.assertEquals(created, new CBORMapper().readValue(cbor, Message.class));
+    }
+
+    /**
+     * Updates and deletes reach the cache.
+     */
+    @Test
+    public void followUpdatesAndDeletes() throws IOException, InterruptedException {
+        Message first = postMessage(9998, "first");
+        Message second = postMessage(9998, "second");
+        Assertions.assertEquals(200, patch(first.getMessageId(), "first, edited").statusCode());
+        Assertions.assertEquals("1", delete(second.getMessageId()).body());
+
+        Message edited = new Message(first.getMessageId(), 9998, "first, edited", 1669947792L);
+        Assertions.assertEquals(edited, objectMapper.readValue(
+                get("/messages/" + first.getMessageId()).body(), Message.class));
+        Assertions.assertEquals("", get("/messages/" + second.getMessageId()).body());
+        Assertions.assertEquals(List.of(edited), getMessages("/accounts/9998/messages"));
+    }
+
+    /**
+     * Once the ring wraps, evicted messages come from the store again and timelines stop using the cache.
+     */
+    @Test
+    public void fallBackAfterEviction() throws IOException, InterruptedException {
+        List<Message> posted = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            posted.add(postMessage(9998, "message " + i));
+        }
+        OffHeapMessageCache cache = app.getBean(OffHeapMessageCache.class);
+        Assertions.assertFalse(cache.isComplete());
+        Assertions.assertNull(cache.find(9999));
+
+        Assertions.assertEquals(new Message(9999, 9999, "test message 1", 1669947792L),
+                objectMapper.readValue(get("/messages/9999").body(), Message.class));
+        Assertions.assertEquals(posted, getMessages("/accounts/9998/messages"));
+    }
+
+    /**
+     * Writing a cached timeline as JSON allocates nothing per message.
+     */
+    @Test
+    public void writeTimelineWithoutAllocating() throws IOException, InterruptedException {
+        for (int i = 0; i < 4; i++) {
+            postMessage(9998, "message " + i);
+        }
+        OffHeapMessageCache.TimelineView timeline = app.getBean(OffHeapMessageCache.class).timeline(9998);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1 << 16);
+        for (int i = 0; i < 10_000; i++) {
+            out.reset();
+            timeline.writeJson(out);
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (int i = 0; i < 10_000; i++) {
+            out.reset();
+            timeline.writeJson(out);
+        }
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+        Assertions.assertTrue(allocated < 64 * 1024, "Allocated=" + allocated);
+        Assertions.assertEquals(4, objectMapper.readValue(out.toByteArray(), new TypeReference<List<Message>>(){}).size());
+    }
+
+    /**
+     * Concurrent PATCHes to one message leave the cache holding the text the store committed last.
+     */
+    @Test
+    public void concurrentUpdatesLeaveCacheMatchingStore() throws Exception {
+        List<CompletableFuture<HttpResponse<String>>> patches = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            HttpRequest patch = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages/9999"))
+                    .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"messageText\": \"text " + i + "\"}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            patches.add(webClient.sendAsync(patch, HttpResponse.BodyHandlers.ofString()));
+        }
+        for (CompletableFuture<HttpResponse<String>> patch : patches) {
+            Assertions.assertEquals(200, patch.get().statusCode());
+        }
+
+        Message stored = app.getBean(MessageStore.class).findByMessageId(9999);
+        Assertions.assertEquals(stored, app.getBean(OffHeapMessageCache.class).get(9999));
+        Assertions.assertEquals(stored, objectMapper.readValue(get("/messages/9999").body(), Message.class));
+    }
+
+    private double hits() {
+        return app.getBean(MeterRegistry.class).get("messages.offheap.hits").counter().count();
+    }
+
+    private Message postMessage(int postedBy, String text) throws IOException, InterruptedException {
+        String json = "{\"postedBy\":" + postedBy + ",\"messageText\": \"" + text + "\",\"timePostedEpoch\": 1669947792}";
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode(), "Actual=" + response.body());
+        return objectMapper.readValue(response.body(), Message.class);
+    }
+
+    private HttpResponse<String> patch(int messageId, String text) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/" + messageId))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"messageText\": \"" + text + "\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> delete(int messageId) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/" + messageId))
+                .DELETE()
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private List<Message> getMessages(String path) throws IOException, InterruptedException {
+        return objectMapper.readValue(get(path).body(), new TypeReference<List<Message>>(){});
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
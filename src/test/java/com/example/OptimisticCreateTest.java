@@ -0,0 +1,133 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import com.example.entity.Message;
+import com.example.metrics.SqlStatementMetrics;
+import com.example.repository.JpaMessageStore;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class OptimisticCreateTest {
+    ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app with optimistic creates, and create a new
+     * webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {"--socialmedia.messages.optimistic-create=true"};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages, then GET localhost:8080/actuator/datasource
+     *
+     * Expected Response:
+     *  Status Code: 200 with the saved message, and the create ran one insert and no account lookup
+     */
+    @Test
+    public void createMessageInsertsWithoutAccountLookup() throws IOException, InterruptedException {
+        app.getBean(SqlStatementMetrics.class).reset();
+        HttpResponse<String> response = postMessage("{\"postedBy\":9999,\"messageText\": \"hello message\",\"timePostedEpoch\": 1669947792}");
+        int status = response.statusCode();
+        Assertions.assertEquals(200, status, "Expected Status Code 200 - Actual Code was: " + status);
+        Message expectedResult = new Message(1, 9999, "hello message", 1669947792L);
+        Assertions.assertEquals(expectedResult, objectMapper.readValue(response.body(), Message.class));
+
+        JsonNode statements = objectMapper.readTree(
+                send("http://localhost:8080/actuator/datasource", "GET", null).body()).get("statements");
+        int inserts = 0;
+        for (JsonNode statement : statements) {
+            String sql = statement.get("sql").asText().toLowerCase();
+            Assertions.assertFalse(sql.contains("from account"), sql);
+            if (sql.startsWith("insert into message")) {
+                inserts += statement.get("count").asInt();
+            }
+        }
+        Assertions.assertEquals(1, inserts, statements.toString());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages from an account that does not exist, then a valid one
+     *
+     * Expected Response:
+     *  Status Code: 400 for the first, and 200 for the second, which is saved normally
+     */
+    @Test
+    public void createMessageUserNotInDb() throws IOException, InterruptedException {
+        HttpResponse<String> rejected = postMessage("{\"postedBy\":5050,\"messageText\": \"hello message\",\"timePostedEpoch\": 1669947792}");
+        Assertions.assertEquals(400, rejected.statusCode());
+
+        HttpResponse<String> accepted = postMessage("{\"postedBy\":9999,\"messageText\": \"hello again\",\"timePostedEpoch\": 1669947792}");
+        Assertions.assertEquals(200, accepted.statusCode());
+        Message saved = objectMapper.readValue(accepted.body(), Message.class);
+        HttpResponse<String> found = send("http://localhost:8080/messages/" + saved.getMessageId(), "GET", null);
+        Assertions.assertEquals(saved, objectMapper.readValue(found.body(), Message.class));
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages without a postedBy, which the foreign key allows
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void createMessageWithoutPostedBy() throws IOException, InterruptedException {
+        HttpResponse<String> response = postMessage("{\"messageText\": \"hello message\",\"timePostedEpoch\": 1669947792}");
+        Assertions.assertEquals(400, response.statusCode());
+    }
+
+    /**
+     * Saving straight through JpaMessageStore.saveCheckingPostedBy a message from a real account whose text is
+     * too long for the column
+     *
+     * Expected Response:
+     *  The integrity violation is rethrown rather than reported as an unknown account
+     */
+    @Test
+    public void otherIntegrityViolationsAreRethrown() {
+        Message tooLong = new Message(9999, "x".repeat(300), 1669947792L);
+        Assertions.assertThrows(DataIntegrityViolationException.class,
+                () -> app.getBean(JpaMessageStore.class).saveCheckingPostedBy(tooLong, postedBy -> true));
+    }
+
+    private HttpResponse<String> postMessage(String json) throws IOException, InterruptedException {
+        return send("http://localhost:8080/messages", "POST", json);
+    }
+
+    private HttpResponse<String> send(String uri, String method, String json) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create(uri))
+                .method(method, json == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(json));
+        if (json != null) {
+            request.header("Content-Type", "application/json");
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,115 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class PersistentProfileTest {
+    ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    String[] args;
+
+    /**
+     * Before every test, start the app on a fresh file-backed database in a temporary directory.
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws IOException, InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        Path dataDir = Files.createTempDirectory("socialmedia-persistent");
+        args = new String[] {
+                "--spring.profiles.active=persistent",
+                "--socialmedia.data-dir=" + dataDir,
+                "--socialmedia.admin.token=secret"
+        };
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * Registering a user and posting a message, restarting the app on the same data directory, then sending
+     * GET localhost:8080/accounts/{accountId}/messages
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the message posted before the restart
+     */
+    @Test
+    public void dataSurvivesRestart() throws IOException, InterruptedException {
+        HttpResponse<String> registered = post("http://localhost:8080/register",
+                "{\"username\":\"persistent\",\"password\":\"password\"}", null);
+        Assertions.assertEquals(200, registered.statusCode());
+        int accountId = objectMapper.readTree(registered.body()).get("accountId").asInt();
+        HttpResponse<String> posted = post("http://localhost:8080/messages",
+                "{\"postedBy\":" + accountId + ",\"messageText\": \"still here\",\"timePostedEpoch\": 1669947792}", null);
+        Assertions.assertEquals(200, posted.statusCode());
+
+        SpringApplication.exit(app);
+        app = SpringApplication.run(SocialMediaApp.class, args);
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/" + accountId + "/messages"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode());
+        JsonNode messages = objectMapper.readTree(response.body());
+        Assertions.assertEquals(1, messages.size());
+        Assertions.assertEquals("still here", messages.get(0).get("messageText").asText());
+
+        HttpResponse<String> again = post("http://localhost:8080/messages",
+                "{\"postedBy\":" + accountId + ",\"messageText\": \"after restart\",\"timePostedEpoch\": 1669947793}", null);
+        Assertions.assertEquals(200, again.statusCode(), "The id sequence should continue after a restart");
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/admin/backup with and without the admin token
+     *
+     * Expected Response:
+     *  Status Code: 403 without the token, 200 with it and a backup file on disk
+     */
+    @Test
+    public void backupWritesZipFile() throws IOException, InterruptedException {
+        Assertions.assertEquals(403, post("http://localhost:8080/admin/backup", "", null).statusCode());
+
+        HttpResponse<String> response = post("http://localhost:8080/admin/backup", "", "secret");
+        int status = response.statusCode();
+        Assertions.assertEquals(200, status, "Expected Status Code 200 - Actual Code was: " + status);
+        Path file = Paths.get(objectMapper.readTree(response.body()).get("file").asText());
+        Assertions.assertTrue(Files.size(file) > 0);
+    }
+
+    private HttpResponse<String> post(String uri, String json, String adminToken) throws IOException, InterruptedException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(URI.create(uri))
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .header("Content-Type", "application/json");
+        if (adminToken != null) {
+            builder.header("X-Admin-Token", adminToken);
+        }
+        return webClient.send(builder.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
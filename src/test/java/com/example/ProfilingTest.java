@@ -0,0 +1,124 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class ProfilingTest {
+    ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Path profileDir;
+
+    /**
+     * Before every test, reset the database, restart the app with an admin token and an empty profile
+     * directory, and create a new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     * @throws IOException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException, IOException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        profileDir = Files.createTempDirectory("profiles");
+        String[] args = new String[] {"--socialmedia.admin.token=secret", "--socialmedia.profiling.dir=" + profileDir};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * Sending POST localhost:8080/admin/profile?seconds=2, and GET localhost:8080/messages/9999 while it records
+     *
+     * Expected Response:
+     *  Status Code: 200, and the body is a recording with a handler span for the GET and repository spans
+     *  for the lookup it made
+     */
+    @Test
+    public void recordingContainsHandlerAndRepositorySpans() throws Exception {
+        CompletableFuture<HttpResponse<byte[]>> recording = webClient.sendAsync(
+                profile("seconds=2&settings=profile"), HttpResponse.BodyHandlers.ofByteArray());
+        Thread.sleep(500);
+        HttpRequest get = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/messages/9999")).build();
+        Assertions.assertEquals(200, webClient.send(get, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpResponse<byte[]> response = recording.get();
+        Assertions.assertEquals(200, response.statusCode());
+        Path file = Files.createTempFile("recording", ".jfr");
+        Files.write(file, response.body());
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+
+        Assertions.assertTrue(events.stream().anyMatch(event -> event.getEventType().getName().equals("com.example.Handler")
+                && "getMessageById".equals(event.getString("handler"))
+                && "/messages/{messageId}".equals(event.getString("path"))
+                && event.getInt("status") == 200));
+        Assertions.assertTrue(events.stream().anyMatch(event -> event.getEventType().getName().equals("com.example.Repository")
+                && "JpaMessageStore".equals(event.getString("repository"))
+                && "findByMessageId".equals(event.getString("operation"))));
+        Assertions.assertTrue(events.stream().anyMatch(event -> event.getEventType().getName().equals("com.example.Repository")
+                && "MessageRepository".equals(event.getString("repository"))));
+        try (var files = Files.list(profileDir)) {
+            Assertions.assertEquals(0, files.count());
+        }
+    }
+
+    /**
+     * Sending POST localhost:8080/admin/profile?seconds=1&download=false
+     *
+     * Expected Response:
+     *  Status Code: 200, and the body names a .jfr file kept in the profile directory
+     */
+    @Test
+    public void recordingKeptOnServer() throws IOException, InterruptedException {
+        HttpResponse<String> response = webClient.send(profile("seconds=1&download=false"), HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode());
+        JsonNode body = objectMapper.readTree(response.body());
+        Path file = Path.of(body.get("file").asText());
+        Assertions.assertEquals(profileDir, file.getParent());
+        Assertions.assertEquals(Files.size(file), body.get("bytes").asLong());
+    }
+
+    /**
+     * Sending POST localhost:8080/admin/profile with no duration, too long a duration, or unknown settings
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void invalidRecordingRequests() throws IOException, InterruptedException {
+        Assertions.assertEquals(400, webClient.send(profile("seconds=0"), HttpResponse.BodyHandlers.ofString()).statusCode());
+        Assertions.assertEquals(400, webClient.send(profile("seconds=301"), HttpResponse.BodyHandlers.ofString()).statusCode());
+        Assertions.assertEquals(400, webClient.send(profile("seconds=1&settings=nope"), HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    private HttpRequest profile(String query) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/admin/profile?" + query))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .header("X-Admin-Token", "secret")
+                .build();
+    }
+}
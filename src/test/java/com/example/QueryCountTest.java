@@ -0,0 +1,135 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.sql.StatementCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Pins the number of SQL statements each endpoint runs, so an extra round trip or an N+1 fails here first.
+ * When a change legitimately alters a count, update the number and say why in the commit.
+ */
+public class QueryCountTest {
+    ApplicationContext app;
+    HttpClient webClient;
+    StatementCounter statements;
+
+    /**
+     * Before every test, reset the database, restart the app, and create a new webClient and statement counter.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        String[] args = new String[] {};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        statements = new StatementCounter(app);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * Registration checks the username, takes an id from the sequence and inserts; login is one lookup.
+     */
+    @Test
+    public void accountEndpoints() throws Exception {
+        statements.assertStatements(3, () -> expect(200, "/register", "POST", "{\"username\":\"user\",\"password\":\"password\"}"));
+        statements.assertStatements(1, () -> expect(409, "/register", "POST", "{\"username\":\"user\",\"password\":\"password\"}"));
+        statements.assertStatements(0, () -> expect(400, "/register", "POST", "{\"username\":\"\",\"password\":\"password\"}"));
+        statements.assertStatements(1, () -> expect(200, "/login", "POST", "{\"username\":\"user\",\"password\":\"password\"}"));
+    }
+
+    /**
+     * A create checks the account, takes an id from the sequence and inserts; invalid text never reaches the
+     * database, not even for a connection.
+     */
+    @Test
+    public void createMessage() throws Exception {
+        statements.assertStatements(3, () -> expect(200, "/messages", "POST",
+                "{\"postedBy\":9999,\"messageText\":\"hello message\",\"timePostedEpoch\":1669947792}"));
+        statements.assertStatements(1, () -> expect(400, "/messages", "POST",
+                "{\"postedBy\":5050,\"messageText\":\"hello message\",\"timePostedEpoch\":1669947792}"));
+        long acquired = connectionsAcquired();
+        statements.assertStatements(0, () -> expect(400, "/messages", "POST",
+                "{\"postedBy\":9999,\"messageText\":\"\",\"timePostedEpoch\":1669947792}"));
+        Assertions.assertEquals(acquired, connectionsAcquired());
+    }
+
+    /**
+     * An optimistic create skips the account lookup: a sequence value and the insert.
+     */
+    @Test
+    public void optimisticCreateMessage() throws Exception {
+        SpringApplication.exit(app);
+        app = SpringApplication.run(SocialMediaApp.class, "--socialmedia.messages.optimistic-create=true");
+        statements = new StatementCounter(app);
+        Thread.sleep(500);
+
+        statements.assertStatements(2, () -> expect(200, "/messages", "POST",
+                "{\"postedBy\":9999,\"messageText\":\"hello message\",\"timePostedEpoch\":1669947792}"));
+    }
+
+    /**
+     * Every read is a single query, however many rows it returns; the latest feed and account stats run none.
+     */
+    @Test
+    public void readEndpoints() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            expect(200, "/messages", "POST", "{\"postedBy\":9999,\"messageText\":\"message " + i + "\",\"timePostedEpoch\":1669947792}");
+        }
+        statements.assertStatements(1, () -> expect(200, "/messages", "GET", null));
+        statements.assertStatements(1, () -> expect(200, "/messages/9999", "GET", null));
+        statements.assertStatements(1, () -> expect(200, "/accounts/9999/messages", "GET", null));
+        statements.assertStatements(1, () -> expect(200, "/messages?ids=1,2,3,9997,12345", "GET", null));
+        statements.assertStatements(1, () -> expect(200, "/messages?since=0&until=2000000000&size=2", "GET", null));
+        statements.assertStatements(1, () -> expect(200, "/accounts/9999/messages?since=0&size=2", "GET", null));
+        statements.assertStatements(0, () -> expect(200, "/messages?latest=3", "GET", null));
+        statements.assertStatements(0, () -> expect(200, "/accounts/9999/stats", "GET", null));
+    }
+
+    /**
+     * Update and delete each load the message, for the caches and stats, then write it.
+     */
+    @Test
+    public void updateAndDeleteMessage() throws Exception {
+        statements.assertStatements(2, () -> expect(200, "/messages/9999", "PATCH", "{\"messageText\":\"updated\"}"));
+        statements.assertStatements(1, () -> expect(400, "/messages/12345", "PATCH", "{\"messageText\":\"updated\"}"));
+        statements.assertStatements(0, () -> expect(400, "/messages/9999", "PATCH", "{\"messageText\":\"\"}"));
+        statements.assertStatements(2, () -> expect(200, "/messages/9999", "DELETE", null));
+        statements.assertStatements(1, () -> expect(200, "/messages/9999", "DELETE", null));
+    }
+
+    private long connectionsAcquired() {
+        return app.getBean(MeterRegistry.class).get("hikaricp.connections.acquire").timers().stream()
+                .mapToLong(Timer::count)
+                .sum();
+    }
+
+    private void expect(int status, String path, String method, String json) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, json == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(json));
+        if (json != null) {
+            request.header("Content-Type", "application/json");
+        }
+        HttpResponse<String> response = webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(status, response.statusCode(), method + " " + path + ": " + response.body());
+    }
+}
@@ -0,0 +1,117 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+public class RateLimitTest {
+    ApplicationContext app;
+    HttpClient webClient;
+
+    /**
+     * Before every test, reset the database and restart the app with small buckets that barely refill, then
+     * create a new webClient for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        String[] args = new String[] {
+                "--socialmedia.rate-limit.enabled=true",
+                "--socialmedia.rate-limit.account-capacity=2",
+                "--socialmedia.rate-limit.account-refill-per-second=0.1",
+                "--socialmedia.rate-limit.address-capacity=5",
+                "--socialmedia.rate-limit.address-refill-per-second=0.1",
+                "--socialmedia.rate-limit.register-capacity=5",
+                "--socialmedia.rate-limit.register-refill-per-second=0.1"
+        };
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * Sending three http requests to POST localhost:8080/messages as the same user with a bucket of two
+     *
+     * Expected Response:
+     *  Status Code: 200, 200, then 429 with a Retry-After header
+     */
+    @Test
+    public void createMessageRateLimitedPerAccount() throws IOException, InterruptedException {
+        Assertions.assertEquals(200, postMessage(9999).statusCode());
+        Assertions.assertEquals(200, postMessage(9999).statusCode());
+        HttpResponse<String> response = postMessage(9999);
+        int status = response.statusCode();
+        Assertions.assertEquals(429, status, "Expected Status Code 429 - Actual Code was: " + status);
+        long retryAfter = Long.parseLong(response.headers().firstValue("Retry-After").orElse("0"));
+        Assertions.assertTrue(retryAfter > 0, "Expected a positive Retry-After, was " + retryAfter);
+
+        Assertions.assertEquals(200, postMessage(9998).statusCode(), "Other accounts should not be limited");
+    }
+
+    /**
+     * Sending six http requests to POST localhost:8080/register from the same address with a bucket of five
+     *
+     * Expected Response:
+     *  Status Code: 200 five times, then 429 with a Retry-After header
+     */
+    @Test
+    public void registerUserRateLimitedPerAddress() throws IOException, InterruptedException {
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertEquals(200, register("limited" + i).statusCode());
+        }
+        HttpResponse<String> response = register("limited5");
+        Assertions.assertEquals(429, response.statusCode());
+        Assertions.assertTrue(response.headers().firstValue("Retry-After").isPresent());
+    }
+
+    /**
+     * Sending six http requests to POST localhost:8080/register from one address, then POST localhost:8080/messages
+     * from the same address
+     *
+     * Expected Response:
+     *  The sixth registration gets 429, and the message is still created: the two have separate buckets
+     */
+    @Test
+    public void registrationsDoNotUseUpMessageBudget() throws IOException, InterruptedException {
+        for (int i = 0; i < 5; i++) {
+            register("burst" + i);
+        }
+        Assertions.assertEquals(429, register("burst5").statusCode());
+        Assertions.assertEquals(200, postMessage(9999).statusCode());
+    }
+
+    private HttpResponse<String> postMessage(int postedBy) throws IOException, InterruptedException {
+        String json = "{\"postedBy\":" + postedBy + ",\"messageText\": \"hello message\",\"timePostedEpoch\": 1669947792}";
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> register(String username) throws IOException, InterruptedException {
+        String json = "{\"username\":\"" + username + "\",\"password\": \"password\"}";
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,123 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.entity.Account;
+import com.example.entity.Message;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class ReplicaRoutingTest {
+    ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, restart the app with two embedded H2 replicas. Both start from data.sql and are never
+     * replicated to, so a read that sees a new message must have gone to the primary.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {
+                "--socialmedia.replicas.enabled=true",
+                "--socialmedia.replicas.urls=jdbc:h2:mem:replica0,jdbc:h2:mem:replica1",
+                "--socialmedia.replicas.init-script=classpath:data.sql",
+                "--socialmedia.replicas.read-your-writes-millis=1000"};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * Reads by other accounts come from the replicas; the posting account reads its own message from the
+     * primary until the read-your-writes window passes.
+     */
+    @Test
+    public void readYourWritesWithinWindow() throws IOException, InterruptedException {
+        Message created = postMessage(9999, "fresh message");
+        String messagePath = "/messages/" + created.getMessageId();
+
+        Assertions.assertFalse(getMessages("/messages", null).contains(created));
+        Assertions.assertFalse(getMessages("/messages", 9998).contains(created));
+        Assertions.assertTrue(getMessages("/messages", 9999).contains(created));
+        Assertions.assertEquals("", get(messagePath, 9998).body());
+        Assertions.assertEquals(created, objectMapper.readValue(get(messagePath, 9999).body(), Message.class));
+        Assertions.assertTrue(getMessages("/accounts/9999/messages", null).contains(created));
+
+        Thread.sleep(1200);
+        Assertions.assertFalse(getMessages("/messages", 9999).contains(created));
+        Assertions.assertFalse(getMessages("/accounts/9999/messages", null).contains(created));
+        Assertions.assertTrue(getMessages("/messages", null).contains(
+                new Message(9999, 9999, "test message 1", 1669947792L)));
+    }
+
+    /**
+     * Registration, login and posting check accounts on the primary, so a new account can be used at once.
+     */
+    @Test
+    public void newAccountUsableImmediately() throws IOException, InterruptedException {
+        HttpRequest register = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\": \"replicauser\", \"password\": \"password\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> registered = webClient.send(register, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, registered.statusCode());
+        Account account = objectMapper.readValue(registered.body(), Account.class);
+
+        HttpRequest login = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/login"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\": \"replicauser\", \"password\": \"password\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assertions.assertEquals(200, webClient.send(login, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        Message created = postMessage(account.getAccountId(), "first post");
+        Assertions.assertEquals(account.getAccountId(), created.getPostedBy());
+    }
+
+    private Message postMessage(int postedBy, String text) throws IOException, InterruptedException {
+        String json = "{\"postedBy\":" + postedBy + ",\"messageText\": \"" + text + "\",\"timePostedEpoch\": 1669947792}";
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode(), "Actual=" + response.body());
+        return objectMapper.readValue(response.body(), Message.class);
+    }
+
+    private List<Message> getMessages(String path, Integer readerId) throws IOException, InterruptedException {
+        return objectMapper.readValue(get(path, readerId).body(), new TypeReference<List<Message>>(){});
+    }
+
+    private HttpResponse<String> get(String path, Integer readerId) throws IOException, InterruptedException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path));
+        if (readerId != null) {
+            builder.header("X-Account-Id", String.valueOf(readerId));
+        }
+        return webClient.send(builder.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
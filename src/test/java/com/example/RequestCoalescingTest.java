@@ -0,0 +1,187 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.entity.Message;
+import com.example.util.SingleFlight;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class RequestCoalescingTest {
+    ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * Loading one key from many threads while the first load is blocked
+     *
+     * Expected Result:
+     *  The loader runs once, every caller gets its result, and the others are counted as coalesced
+     */
+    @Test
+    public void concurrentLoadsShareOneCall() throws Exception {
+        SingleFlight<Integer, String> loads = new SingleFlight<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> loads.load(1, () -> {
+            calls.incrementAndGet();
+            started.countDown();
+            await(release);
+            return "value";
+        }));
+        Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        List<Thread> followers = new ArrayList<>();
+        List<String> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread follower = new Thread(() -> {
+                String result = loads.load(1, () -> {
+                    calls.incrementAndGet();
+                    return "other";
+                });
+                synchronized (results) {
+                    results.add(result);
+                }
+            });
+            followers.add(follower);
+            follower.start();
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (loads.coalescedCount() < 8 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+        for (Thread follower : followers) {
+            follower.join(5000);
+        }
+
+        Assertions.assertEquals("value", leader.get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(8, results.size());
+        Assertions.assertTrue(results.stream().allMatch("value"::equals), "Actual=" + results);
+        Assertions.assertEquals(1, calls.get());
+        Assertions.assertEquals(1, loads.loadCount());
+        Assertions.assertEquals(8, loads.coalescedCount());
+
+        Assertions.assertEquals("again", loads.load(1, () -> "again"));
+        Assertions.assertEquals(2, loads.loadCount());
+    }
+
+    /**
+     * A failing load is shared with the callers waiting on it, and the next caller loads again
+     */
+    @Test
+    public void failedLoadIsNotKept() {
+        SingleFlight<Integer, String> loads = new SingleFlight<>();
+        Assertions.assertThrows(IllegalStateException.class, () -> loads.load(1, () -> {
+            throw new IllegalStateException("down");
+        }));
+        Assertions.assertEquals("up", loads.load(1, () -> "up"));
+    }
+
+    /**
+     * Sending many concurrent GET localhost:8080/messages/9999 requests, then GET the lookup counters
+     *
+     * Expected Response:
+     *  Every request gets the message, and every lookup was either a store query or coalesced into one
+     */
+    @Test
+    public void concurrentGetsAreCountedAsLoadedOrCoalesced() throws Exception {
+        int requests = 40;
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages/9999"))
+                    .build();
+            responses.add(webClient.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+        }
+        Message expected = new Message(9999, 9999, "test message 1", 1669947792L);
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            Assertions.assertEquals(200, response.get().statusCode());
+            Assertions.assertEquals(expected, objectMapper.readValue(response.get().body(), Message.class));
+        }
+
+        double loaded = counter("messages.lookups.loaded", "findByMessageId");
+        double coalesced = counter("messages.lookups.coalesced", "findByMessageId");
+        Assertions.assertTrue(loaded >= 1, "Loaded=" + loaded);
+        Assertions.assertEquals(requests, loaded + coalesced, 0.0);
+    }
+
+    /**
+     * Sending PATCH localhost:8080/messages/9999, then GET localhost:8080/messages/9999 without an account header
+     *
+     * Expected Response:
+     *  The GET sees the new text
+     */
+    @Test
+    public void readAfterUpdateSeesNewText() throws IOException, InterruptedException {
+        HttpRequest patch = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/9999"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"messageText\":\"updated\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assertions.assertEquals(200, webClient.send(patch, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpRequest get = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/9999"))
+                .build();
+        HttpResponse<String> response = webClient.send(get, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals("updated", objectMapper.readValue(response.body(), Message.class).getMessageText());
+    }
+
+    private double counter(String name, String query) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/actuator/metrics/" + name + "?tag=query:" + query))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode());
+        JsonNode measurement = objectMapper.readTree(response.body()).get("measurements").get(0);
+        return measurement.get("value").asDouble();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.entity.Message;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class RetrieveMessagesByIdsTest {
+    ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database, restart the app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?ids=9996,1234,9999,9996
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the messages in request order, duplicates included, and the ids that do not exist
+     */
+    @Test
+    public void getMessagesByIdsInRequestOrder() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/messages?ids=9996,1234,9999,9996");
+        Assertions.assertEquals(200, response.statusCode());
+        JsonNode batch = objectMapper.readTree(response.body());
+        Message first = new Message(9999, 9999, "test message 1", 1669947792L);
+        Message third = new Message(9996, 9996, "test message 3", 1669947792L);
+        Assertions.assertEquals(List.of(third, first, third), objectMapper.convertValue(
+                batch.get("messages"), new TypeReference<List<Message>>(){}));
+        Assertions.assertEquals("[1234]", batch.get("missingIds").toString());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?ids= with 501 ids
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void getTooManyMessagesByIds() throws IOException, InterruptedException {
+        String ids = IntStream.rangeClosed(1, 501).mapToObj(Integer::toString).collect(Collectors.joining(","));
+        Assertions.assertEquals(400, get("/messages?ids=" + ids).statusCode());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages without ids still returns every message.
+     */
+    @Test
+    public void getAllMessagesWithoutIds() throws IOException, InterruptedException {
+        List<Message> all = objectMapper.readValue(get("/messages").body(), new TypeReference<List<Message>>(){});
+        Assertions.assertEquals(3, all.size());
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
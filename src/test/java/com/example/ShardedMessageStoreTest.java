@@ -0,0 +1,220 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+
+import com.example.entity.Message;
+import com.example.repository.PartialSaveException;
+import com.example.repository.ShardedMessageStore;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class ShardedMessageStoreTest {
+    ApplicationContext app;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    ShardedMessageStore store;
+
+    /**
+     * Before every test, restart the app with messages sharded over three in-memory databases, and create a
+     * new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        String[] args = new String[] {
+                "--socialmedia.message-store=sharded",
+                "--socialmedia.sharding.urls=jdbc:h2:mem:shard0,jdbc:h2:mem:shard1,jdbc:h2:mem:shard2"};
+        app = SpringApplication.run(SocialMediaApp.class, args);
+        store = app.getBean(ShardedMessageStore.class);
+        Thread.sleep(500);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        Thread.sleep(500);
+        SpringApplication.exit(app);
+    }
+
+    /**
+     * Messages from several users land on the shard picked for their user, and the messageId encodes it.
+     */
+    @Test
+    public void messageIdEncodesShardOfPostedBy() throws IOException, InterruptedException {
+        for (int postedBy : new int[] {9999, 9998, 9997, 9996}) {
+            Message created = postMessage(postedBy, "from " + postedBy);
+            Assertions.assertEquals(store.shardForPostedBy(postedBy), store.shardForMessageId(created.getMessageId()),
+                    "Actual=" + created);
+        }
+    }
+
+    /**
+     * GET localhost:8080/messages merges every shard in messageId order; lookups by id and by user find
+     * the message on its own shard.
+     */
+    @Test
+    public void readsAcrossShards() throws IOException, InterruptedException {
+        Message first = postMessage(9999, "first");
+        Message second = postMessage(9998, "second");
+        Message third = postMessage(9997, "third");
+
+        List<Message> all = objectMapper.readValue(get("/messages").body(), new TypeReference<List<Message>>(){});
+        Assertions.assertEquals(3, all.size(), "Actual=" + all);
+        Assertions.assertTrue(all.containsAll(List.of(first, second, third)), "Actual=" + all);
+        for (int i = 1; i < all.size(); i++) {
+            Assertions.assertTrue(all.get(i - 1).getMessageId() < all.get(i).getMessageId(), "Actual=" + all);
+        }
+
+        HttpResponse<String> byId = get("/messages/" + second.getMessageId());
+        Assertions.assertEquals(second, objectMapper.readValue(byId.body(), Message.class));
+
+        List<Message> byUser = objectMapper.readValue(get("/accounts/9997/messages").body(),
+                new TypeReference<List<Message>>(){});
+        Assertions.assertEquals(List.of(third), byUser);
+    }
+
+    /**
+     * findLatest merges every shard's newest messages, highest messageId first.
+     */
+    @Test
+    public void findLatestAcrossShards() throws IOException, InterruptedException {
+        for (int postedBy : new int[] {9999, 9998, 9997, 9996}) {
+            postMessage(postedBy, "from " + postedBy);
+        }
+        List<Message> all = store.findAll();
+        Assertions.assertEquals(List.of(all.get(3), all.get(2), all.get(1)), store.findLatest(3));
+    }
+
+    /**
+     * GET localhost:8080/messages?ids= collects messages from every shard, in request order.
+     */
+    @Test
+    public void multiGetAcrossShards() throws IOException, InterruptedException {
+        Message first = postMessage(9999, "first");
+        Message second = postMessage(9998, "second");
+        Message third = postMessage(9997, "third");
+
+        String ids = third.getMessageId() + "," + first.getMessageId() + ",123456," + second.getMessageId();
+        JsonNode batch = objectMapper.readTree(get("/messages?ids=" + ids).body());
+        Assertions.assertEquals(List.of(third, first, second), objectMapper.convertValue(
+                batch.get("messages"), new TypeReference<List<Message>>(){}));
+        Assertions.assertEquals("[123456]", batch.get("missingIds").toString());
+    }
+
+    /**
+     * PATCH and DELETE go to the shard that holds the message.
+     */
+    @Test
+    public void updateAndDeleteOnOwningShard() throws IOException, InterruptedException {
+        Message created = postMessage(9998, "before");
+
+        HttpRequest patch = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/" + created.getMessageId()))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"messageText\": \"after\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assertions.assertEquals(200, webClient.send(patch, HttpResponse.BodyHandlers.ofString()).statusCode());
+        Assertions.assertEquals("after", store.findByMessageId(created.getMessageId()).getMessageText());
+
+        HttpRequest delete = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/" + created.getMessageId()))
+                .DELETE()
+                .build();
+        HttpResponse<String> deleted = webClient.send(delete, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals("1", deleted.body());
+        Assertions.assertNull(store.findByMessageId(created.getMessageId()));
+    }
+
+    /**
+     * A batch takes its ids from each shard's sequence at once; they are distinct and encode the shard.
+     */
+    @Test
+    public void saveAllAssignsDistinctIdsPerShard() {
+        int postedBy = postedByOnShard(1);
+        List<Message> saved = store.saveAll(List.of(new Message(postedBy, "one", 1669947792L),
+                new Message(postedBy, "two", 1669947792L), new Message(postedBy, "three", 1669947792L)));
+
+        Assertions.assertEquals(3, saved.stream().map(Message::getMessageId).distinct().count(), "Actual=" + saved);
+        for (Message message : saved) {
+            Assertions.assertEquals(1, store.shardForMessageId(message.getMessageId()), "Actual=" + saved);
+        }
+        Assertions.assertEquals(3, store.findAllByPostedBy(postedBy).size());
+    }
+
+    /**
+     * A batch whose last shard fails keeps the messages committed on earlier shards, reports only those as
+     * saved, and leaves nothing of the failed shard's part behind.
+     */
+    @Test
+    public void saveAllReportsMessagesSavedBeforeAShardFailed() {
+        int onFirstShard = postedByOnShard(0);
+        int onLastShard = postedByOnShard(2);
+        Message saved = new Message(onFirstShard, "saved", 1669947792L);
+        Message rolledBack = new Message(onLastShard, "rolled back", 1669947792L);
+        Message tooLong = new Message(onLastShard, "x".repeat(300), 1669947792L);
+
+        PartialSaveException e = Assertions.assertThrows(PartialSaveException.class,
+                () -> store.saveAll(List.of(rolledBack, saved, tooLong)));
+
+        Assertions.assertEquals(1, e.getSaved().size());
+        Assertions.assertSame(saved, e.getSaved().get(0));
+        Assertions.assertEquals(List.of(saved), store.findAllByPostedBy(onFirstShard));
+        Assertions.assertNull(rolledBack.getMessageId());
+        Assertions.assertEquals(List.of(), store.findAllByPostedBy(onLastShard));
+    }
+
+    /**
+     * A message without a timePostedEpoch is saved alone and in a batch, and reads back with a null time.
+     */
+    @Test
+    public void messagesWithoutTimePosted() {
+        int postedBy = postedByOnShard(1);
+        Message single = store.save(new Message(postedBy, "single", null));
+        Message batched = store.saveAll(List.of(new Message(postedBy, "batched", null))).get(0);
+
+        Assertions.assertNull(store.findByMessageId(single.getMessageId()).getTimePostedEpoch());
+        Assertions.assertNull(store.findByMessageId(batched.getMessageId()).getTimePostedEpoch());
+        Assertions.assertEquals(List.of(single, batched), store.findAllByPostedBy(postedBy));
+    }
+
+    private int postedByOnShard(int shard) {
+        int postedBy = 1;
+        while (store.shardForPostedBy(postedBy) != shard) {
+            postedBy++;
+        }
+        return postedBy;
+    }
+
+    private Message postMessage(int postedBy, String text) throws IOException, InterruptedException {
+        String json = "{\"postedBy\":" + postedBy + ",\"messageText\": \"" + text + "\",\"timePostedEpoch\": 1669947792}";
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode(), "Actual=" + response.body());
+        return objectMapper.readValue(response.body(), Message.class);
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.allocation;
+
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.Ordered;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Measures the bytes each request allocates on the thread that serves it, from the outermost filter until the
+ * response body is written, and groups the samples by endpoint ("POST /messages", "GET /messages/{messageId}").
+ *
+ * Uses the per-thread allocation counter of com.sun.management.ThreadMXBean, so the test client's own
+ * allocations in the same JVM are not counted. Test only: start the app with Config as an extra source.
+ */
+public class AllocationRecorder implements Filter {
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final Map<String, List<Long>> samples = new ConcurrentHashMap<>();
+    private volatile boolean recording;
+
+    /**
+     * Registers the recorder ahead of every other filter. Not a @Configuration, so component scanning leaves it
+     * out of the other tests.
+     */
+    public static class Config {
+        @Bean
+        public AllocationRecorder allocationRecorder() {
+            return new AllocationRecorder();
+        }
+
+        @Bean
+        public FilterRegistrationBean<AllocationRecorder> allocationRecorderRegistration(AllocationRecorder recorder) {
+            FilterRegistrationBean<AllocationRecorder> registration = new FilterRegistrationBean<>(recorder);
+            registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+            return registration;
+        }
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        if (!recording) {
+            chain.doFilter(request, response);
+            return;
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        chain.doFilter(request, response);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        if (pattern != null) {
+            String endpoint = ((HttpServletRequest) request).getMethod() + " " + pattern;
+            samples.computeIfAbsent(endpoint, key -> Collections.synchronizedList(new ArrayList<>())).add(allocated);
+        }
+    }
+
+    /**
+     * Starts recording, dropping earlier samples, e.g. those taken while warming up.
+     */
+    public void start() {
+        samples.clear();
+        recording = true;
+    }
+
+    public void stop() {
+        recording = false;
+    }
+
+    /**
+     * @return the median bytes allocated per request for each endpoint recorded
+     */
+    public Map<String, Long> medianBytesPerRequest() {
+        Map<String, Long> medians = new TreeMap<>();
+        samples.forEach((endpoint, values) -> {
+            List<Long> sorted;
+            synchronized (values) {
+                sorted = new ArrayList<>(values);
+            }
+            Collections.sort(sorted);
+            medians.put(endpoint, sorted.get(sorted.size() / 2));
+        });
+        return medians;
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.benchmark;
+
+import com.example.entity.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compares payload size and serialization time of a 10k message list in each response format
+ * offered by the message list endpoints.
+ *
+ * Run the main method from the test classpath; it is not part of the test suite.
+ */
+public class MessageSerializationBenchmark {
+
+    private static final int MESSAGES = 10_000;
+    private static final int WARMUP_ROUNDS = 50;
+    private static final int MEASURED_ROUNDS = 100;
+
+    private interface Encoder {
+        byte[] encode(List<Message> messages) throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<Message> messages = new ArrayList<>(MESSAGES);
+        for (int i = 0; i < MESSAGES; i++) {
+            messages.add(new Message(i + 1, 9000 + (i % 100), "benchmark message number " + i + " with some text", 1669947792L + i));
+        }
+
+        ObjectMapper json = new ObjectMapper();
+        ObjectMapper smile = new SmileMapper();
+        ObjectMapper cbor = new CBORMapper();
+
+        System.out.printf("%-10s %12s %14s%n", "format", "bytes", "ms/op");
+        run("json", messages, json::writeValueAsBytes);
+        run("json+gzip", messages, list -> gzip(json.writeValueAsBytes(list)));
+        run("smile", messages, smile::writeValueAsBytes);
+        run("cbor", messages, cbor::writeValueAsBytes);
+    }
+
+    private static void run(String name, List<Message> messages, Encoder encoder) throws IOException {
+        int size = 0;
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            size = encoder.encode(messages).length;
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            size = encoder.encode(messages).length;
+        }
+        double millis = (System.nanoTime() - start) / 1_000_000.0 / MEASURED_ROUNDS;
+        System.out.printf("%-10s %12d %14.3f%n", name, size, millis);
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.benchmark;
+
+import com.example.SocialMediaApp;
+import com.example.entity.Message;
+import com.example.repository.MessageStore;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the JPA message store with the append-only log store, with and without an fsync per write,
+ * on single saves, batched saves, lookups by id, timelines and text updates.
+ *
+ * Run the main method from the test classpath; it is not part of the test suite.
+ */
+public class MessageStoreBenchmark {
+
+    private static final int MESSAGES = 20_000;
+    private static final int BATCH_SIZE = 100;
+    private static final int LOOKUPS = 50_000;
+    private static final int TIMELINES = 200;
+    private static final int UPDATES = 5_000;
+    private static final int[] ACCOUNTS = {9996, 9997, 9998, 9999};
+
+    private interface Operation {
+        void run(int i);
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.out.printf("%-14s %-14s %12s%n", "store", "operation", "ops/s");
+        run("jpa", "--socialmedia.message-store=jpa");
+        run("log", "--socialmedia.message-store=log",
+                "--socialmedia.log-store.dir=" + Files.createTempDirectory("log-store-benchmark"));
+        run("log (no sync)", "--socialmedia.message-store=log",
+                "--socialmedia.log-store.dir=" + Files.createTempDirectory("log-store-benchmark"),
+                "--socialmedia.log-store.sync-writes=false");
+    }
+
+    private static void run(String name, String... args) {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(SocialMediaApp.class)
+                .web(WebApplicationType.NONE)
+                .run(args)) {
+            MessageStore store = context.getBean(MessageStore.class);
+            // The data.sql sample messages sit at ids the JPA sequence reaches during the run.
+            store.deleteByMessageIds(List.of(9996, 9997, 9999));
+            List<Integer> ids = new ArrayList<>();
+            Random random = new Random(42);
+
+            measure(name, "save", MESSAGES, i -> ids.add(store.save(message(i)).getMessageId()));
+            measure(name, "saveAll", MESSAGES / BATCH_SIZE, i -> {
+                List<Message> batch = new ArrayList<>(BATCH_SIZE);
+                for (int j = 0; j < BATCH_SIZE; j++) {
+                    batch.add(message(i * BATCH_SIZE + j));
+                }
+                for (Message saved : store.saveAll(batch)) {
+                    ids.add(saved.getMessageId());
+                }
+            });
+            measure(name, "findById", LOOKUPS, i -> store.findByMessageId(ids.get(random.nextInt(ids.size()))));
+            measure(name, "timeline", TIMELINES, i -> store.findAllByPostedBy(ACCOUNTS[i % ACCOUNTS.length]));
+            measure(name, "updateText", UPDATES,
+                    i -> store.updateMessageText(ids.get(random.nextInt(ids.size())), "updated " + i));
+        }
+    }
+
+    private static Message message(int i) {
+        return new Message(ACCOUNTS[i % ACCOUNTS.length], "benchmark message number " + i + " with some text", 1669947792L + i);
+    }
+
+    private static void measure(String store, String operation, int count, Operation body) {
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            body.run(i);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-14s %-14s %12.0f%n", store, operation, count / seconds);
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.benchmark;
+
+import com.example.ratelimit.TokenBucketRateLimiter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Measures the cost of a rate limit check on a table of 10k accounts, single threaded and with several
+ * threads hitting the same table, to show the limiter adds negligible overhead to POST /messages.
+ *
+ * Run the main method from the test classpath; it is not part of the test suite.
+ */
+public class RateLimiterBenchmark {
+
+    private static final int KEYS = 10_000;
+    private static final int OPERATIONS = 20_000_000;
+    private static volatile long sink;
+
+    public static void main(String[] args) throws InterruptedException {
+        Integer[] keys = new Integer[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = i;
+        }
+
+        for (int threads : new int[] {1, 2, 4, 8}) {
+            TokenBucketRateLimiter<Integer> limiter = new TokenBucketRateLimiter<>(60, 1_000_000, 300_000);
+            run(limiter, keys, threads);
+            double nanos = run(limiter, keys, threads);
+            System.out.printf("threads=%d  %.1f ns/check (wall time over all threads)%n", threads, nanos);
+        }
+    }
+
+    private static double run(TokenBucketRateLimiter<Integer> limiter, Integer[] keys, int threads)
+            throws InterruptedException {
+        int perThread = OPERATIONS / threads;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int offset = t * 7919;
+            Thread worker = new Thread(() -> {
+                long waited = 0;
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    waited += limiter.tryAcquire(keys[(i + offset) % keys.length]);
+                }
+                sink += waited;
+            });
+            worker.start();
+            workers.add(worker);
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return (System.nanoTime() - begin) / (double) (perThread * (long) threads);
+    }
+}
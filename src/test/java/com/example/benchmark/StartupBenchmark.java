@@ -0,0 +1,88 @@
+package com.example.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reports time-to-first-request: from launching a new JVM until GET /messages first answers 200.
+ *
+ * Arguments: the main class (com.example.SocialMediaApp or com.example.FastStartApp), then any extra JVM
+ * options, e.g. -XX:SharedArchiveFile=target/socialmedia.jsa. Each configuration is started five times.
+ *
+ * Run the main method from the test classpath; it is not part of the test suite.
+ */
+public class StartupBenchmark {
+
+    private static final int RUNS = 5;
+    private static final Duration TIMEOUT = Duration.ofSeconds(60);
+
+    public static void main(String[] args) throws Exception {
+        String mainClass = args.length > 0 ? args[0] : "com.example.SocialMediaApp";
+        List<String> jvmOptions = args.length > 1 ? Arrays.asList(args).subList(1, args.length) : List.of();
+
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofMillis(200)).build();
+        long total = 0;
+        for (int run = 1; run <= RUNS; run++) {
+            long millis = timeToFirstRequest(client, mainClass, jvmOptions);
+            total += millis;
+            System.out.printf("%s run %d: %d ms%n", mainClass, run, millis);
+        }
+        System.out.printf("%s %s mean: %d ms%n", mainClass, jvmOptions, total / RUNS);
+    }
+
+    private static long timeToFirstRequest(HttpClient client, String mainClass, List<String> jvmOptions)
+            throws IOException, InterruptedException {
+        int port = freePort();
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(jvmOptions);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(mainClass);
+        command.add("--server.port=" + port);
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + port + "/messages"))
+                .timeout(Duration.ofSeconds(5))
+                .build();
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        try {
+            long deadline = start + TIMEOUT.toNanos();
+            while (System.nanoTime() < deadline) {
+                try {
+                    if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                        return (System.nanoTime() - start) / 1_000_000;
+                    }
+                } catch (ConnectException e) {
+                    // Not listening yet.
+                }
+                Thread.sleep(10);
+            }
+            throw new IllegalStateException(mainClass + " did not answer within " + TIMEOUT);
+        } finally {
+            process.destroy();
+            process.waitFor();
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
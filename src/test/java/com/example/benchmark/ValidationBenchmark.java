@@ -0,0 +1,95 @@
+package com.example.benchmark;
+
+import com.example.SocialMediaApp;
+import com.example.entity.Account;
+import com.example.entity.Message;
+import com.example.service.AccountService;
+import com.example.service.MessageService;
+import com.example.service.Result;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Measures the invalid-request path of the write endpoints' services: a blank message, a message from an
+ * unknown account, a taken username and a wrong password, each returned as a Result. For comparison it also
+ * times throwing and catching an IllegalArgumentException at the same call depth, which is what every one of
+ * these requests cost before the services stopped throwing for expected failures.
+ *
+ * The services print a line per call; that output is discarded while measuring.
+ *
+ * Run the main method from the test classpath; it is not part of the test suite.
+ */
+public class ValidationBenchmark {
+
+    private static final int WARMUP = 20_000;
+    private static final int OPERATIONS = 200_000;
+    private static volatile Object sink;
+
+    private interface Operation {
+        Object run();
+    }
+
+    public static void main(String[] args) {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(SocialMediaApp.class)
+                .web(WebApplicationType.NONE)
+                .run(args)) {
+            MessageService messageService = context.getBean(MessageService.class);
+            AccountService accountService = context.getBean(AccountService.class);
+            Message blank = new Message(9999, "", 1669947792L);
+            Message unknownUser = new Message(12345, "hello", 1669947792L);
+            Account taken = new Account("testuser1", "password");
+
+            PrintStream out = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            double[] nanos;
+            try {
+                nanos = new double[] {
+                        measure(() -> messageService.createMessage(blank)),
+                        measure(() -> messageService.createMessage(unknownUser)),
+                        measure(() -> accountService.registerAccount(taken)),
+                        measure(() -> accountService.login("testuser1", "wrong")),
+                        measure(() -> throwAndCatch(8))
+                };
+            } finally {
+                System.setOut(out);
+            }
+            String[] names = {"blank message", "unknown account", "taken username", "wrong password",
+                    "throw + catch"};
+            System.out.printf("%-16s %12s%n", "invalid request", "ns/op");
+            for (int i = 0; i < names.length; i++) {
+                System.out.printf("%-16s %12.0f%n", names[i], nanos[i]);
+            }
+        }
+    }
+
+    private static double measure(Operation operation) {
+        for (int i = 0; i < WARMUP; i++) {
+            sink = operation.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            sink = operation.run();
+        }
+        return (System.nanoTime() - start) / (double) OPERATIONS;
+    }
+
+    private static Result<Void> throwAndCatch(int depth) {
+        try {
+            throwAt(depth);
+            return Result.valid();
+        } catch (IllegalArgumentException e) {
+            return Result.invalid(e.getMessage());
+        }
+    }
+
+    private static void throwAt(int depth) {
+        if (depth == 0) {
+            throw new IllegalArgumentException("Message cannot be blank.");
+        }
+        throwAt(depth - 1);
+    }
+}
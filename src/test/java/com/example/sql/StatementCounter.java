@@ -0,0 +1,46 @@
+package com.example.sql;
+
+import com.example.metrics.SqlStatementMetrics;
+import org.junit.jupiter.api.Assertions;
+import org.springframework.context.ApplicationContext;
+
+import java.util.stream.Collectors;
+
+/**
+ * Counts the SQL statements an action runs, using the SqlStatementMetrics the app's DataSource proxy reports
+ * to. A JDBC batch counts once, as it is one round trip.
+ *
+ * The counters are global, so the action must be the only thing using the database while it runs; in the
+ * endpoint tests the app is otherwise idle.
+ */
+public final class StatementCounter {
+
+    public interface Action {
+        void run() throws Exception;
+    }
+
+    private final SqlStatementMetrics metrics;
+
+    public StatementCounter(ApplicationContext app) {
+        this.metrics = app.getBean(SqlStatementMetrics.class);
+    }
+
+    /**
+     * @return the number of statements the action ran
+     */
+    public long count(Action action) throws Exception {
+        metrics.reset();
+        action.run();
+        return metrics.getTotalStatements();
+    }
+
+    /**
+     * Fails, listing each statement and how often it ran, unless the action runs exactly the expected number.
+     */
+    public void assertStatements(long expected, Action action) throws Exception {
+        long actual = count(action);
+        Assertions.assertEquals(expected, actual, () -> "Statements run:\n" + metrics.getStatements().stream()
+                .map(statement -> statement.getCount() + " x " + statement.getSql())
+                .collect(Collectors.joining("\n")));
+    }
+}